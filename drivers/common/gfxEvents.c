@@ -8,6 +8,10 @@
 *---------------------------------------------------------------------------*/
 #include <stdint.h>
 #include <stdlib.h>
+#include <unistd.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <time.h>
 #include <quickgfx.h>
 #include <gfxdriver.h>
 
@@ -18,6 +22,18 @@
 static GFX_TOUCH_EVENT_INFO *g_pEvents    = NULL;
 static int                   g_eventCount = 0;
 static int                   g_eventSize  = 0;
+static int                   g_wakeup[2]  = { -1, -1 }; //! Pipe used to stop waiting for events
+
+/** Get the time stamp for a new event
+ *
+ * @return the current value of the monotonic clock in milliseconds. The
+ *         value wraps so only the difference between two times is useful.
+ */
+uint32_t gfx_common_EventTime() {
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  return (uint32_t)((now.tv_sec * 1000) + (now.tv_nsec / 1000000));
+  }
 
 /** Add a new event to the event queue
  */
@@ -35,6 +51,7 @@ GFX_RESULT gfx_common_AddEvent(GFX_TOUCH_EVENT evType, uint16_t x, uint16_t y) {
   g_pEvents[g_eventCount].m_event = evType;
   g_pEvents[g_eventCount].m_xpos = x;
   g_pEvents[g_eventCount].m_ypos = y;
+  g_pEvents[g_eventCount].m_time = gfx_common_EventTime();
   g_eventCount++;
   // All done
   return GFX_RESULT_OK;
@@ -58,3 +75,70 @@ GFX_RESULT gfx_common_CheckEvents(_gfx_HandleEvent pfHandleEvent) {
   // And we are done
   return result;
   }
+
+/** Get the file descriptor that becomes readable when gfx_Wakeup() is called
+ *
+ * The pipe is created on first use. Drivers that wait for events on their
+ * own file descriptors should include this one as well.
+ *
+ * @return the file descriptor or -1 if the pipe could not be created.
+ */
+int gfx_common_WakeupFd() {
+  if(g_wakeup[0]<0) {
+    if(pipe(g_wakeup)!=0)
+      return -1;
+    fcntl(g_wakeup[0], F_SETFL, O_NONBLOCK);
+    fcntl(g_wakeup[1], F_SETFL, O_NONBLOCK);
+    }
+  return g_wakeup[0];
+  }
+
+/** Stop waiting for events
+ *
+ * This may be called from any thread.
+ */
+GFX_RESULT gfx_common_Wakeup() {
+  char ch = 0;
+  if(gfx_common_WakeupFd()<0)
+    return GFX_RESULT_INTERNAL;
+  // A full pipe means a wake up is already pending so errors are ignored
+  (void)write(g_wakeup[1], &ch, 1);
+  return GFX_RESULT_OK;
+  }
+
+/** Determine if there is a reason to stop waiting for events
+ *
+ * Any pending wake up requests are cleared.
+ *
+ * @return true if there are events in the queue or gfx_Wakeup() has been
+ *         called since the last check.
+ */
+bool gfx_common_EventsPending() {
+  char buffer[16];
+  bool pending = (g_eventCount>0);
+  if(g_wakeup[0]>=0) {
+    while(read(g_wakeup[0], buffer, sizeof(buffer))>0)
+      pending = true;
+    }
+  return pending;
+  }
+
+/** Wait for events
+ *
+ * This implementation is suitable for drivers that add events from another
+ * thread (and call gfx_Wakeup() when they do).
+ *
+ * @param timeout the maximum time to wait (in milliseconds).
+ */
+GFX_RESULT gfx_common_WaitEvents(uint32_t timeout) {
+  struct pollfd fds;
+  if(gfx_common_EventsPending()||(timeout==0))
+    return GFX_RESULT_OK;
+  fds.fd = gfx_common_WakeupFd();
+  if(fds.fd<0)
+    return GFX_RESULT_INTERNAL;
+  fds.events = POLLIN;
+  poll(&fds, 1, (int)timeout);
+  gfx_common_EventsPending();
+  return GFX_RESULT_OK;
+  }
@@ -58,9 +58,24 @@ GFX_RESULT gfx_common_DrawBox(uint16_t x1, uint16_t y1, uint16_t x2, uint16_t y2
 /** Check for pending events */
 GFX_RESULT gfx_common_CheckEvents(_gfx_HandleEvent pfHandleEvent);
 
+/** Get the time stamp for a new event */
+uint32_t gfx_common_EventTime();
+
 /** Add a new event to the event queue */
 GFX_RESULT gfx_common_AddEvent(GFX_TOUCH_EVENT evType, uint16_t p1, uint16_t p2);
 
+/** Wait for events */
+GFX_RESULT gfx_common_WaitEvents(uint32_t timeout);
+
+/** Stop waiting for events */
+GFX_RESULT gfx_common_Wakeup();
+
+/** Get the file descriptor that becomes readable when gfx_Wakeup() is called */
+int gfx_common_WakeupFd();
+
+/** Determine if there is a reason to stop waiting for events */
+bool gfx_common_EventsPending();
+
 //---------------------------------------------------------------------------
 // Helper functions to manage masking
 //---------------------------------------------------------------------------
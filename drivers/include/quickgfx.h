@@ -81,6 +81,7 @@ typedef struct _GFX_TOUCH_EVENT_INFO {
   GFX_TOUCH_EVENT m_event;  //! The type of event that was detected
   uint16_t        m_xpos;   //! The X position of the event (in screen co-ordinates)
   uint16_t        m_ypos;   //! The Y position of the event (in screen co-ordinates)
+  uint32_t        m_time;   //! When the event occurred (milliseconds from an arbitrary point)
   } GFX_TOUCH_EVENT_INFO;
 
 /** Supported image types
@@ -234,6 +235,19 @@ typedef GFX_RESULT (*_gfx_CheckEvents)(_gfx_HandleEvent pfHandleEvent);
  */
 typedef GFX_RESULT (*_gfx_AddEvent)(GFX_TOUCH_EVENT evType, uint16_t x, uint16_t y);
 
+/** Wait for events
+ *
+ * Blocks until an event is available, gfx_Wakeup() is called or the timeout
+ * (in milliseconds) expires.
+ */
+typedef GFX_RESULT (*_gfx_WaitEvents)(uint32_t timeout);
+
+/** Wake up a thread blocked in gfx_WaitEvents()
+ *
+ * This may be called from any thread.
+ */
+typedef GFX_RESULT (*_gfx_Wakeup)();
+
 /** The graphics driver API
  */
 typedef struct _GFX_DRIVER {
@@ -258,6 +272,8 @@ typedef struct _GFX_DRIVER {
   _gfx_DrawBox          m_pfDrawBox;          //! Draw a box
   _gfx_CheckEvents      m_pfCheckEvents;      //! Check for pending events
   _gfx_AddEvent         m_pfAddEvent;         //! Add a new event to the queue
+  _gfx_WaitEvents       m_pfWaitEvents;       //! Wait for events
+  _gfx_Wakeup           m_pfWakeup;           //! Stop waiting for events
   } GFX_DRIVER;
 
 //---------------------------------------------------------------------------
@@ -357,6 +373,12 @@ const void *gfx_Framebuffer();
 /** Add a new event to the event queue */
 #define gfx_AddEvent(evType, x, y) (*g_GfxDriver.m_pfAddEvent)(evType, x, y)
 
+/** Wait for events (or until the timeout in milliseconds expires) */
+#define gfx_WaitEvents(timeout) (*g_GfxDriver.m_pfWaitEvents)(timeout)
+
+/** Stop waiting for events */
+#define gfx_Wakeup() (*g_GfxDriver.m_pfWakeup)()
+
 /** Clip a value
  *
  * @param x the x co-ordinate to clip
@@ -14,70 +14,128 @@
 
 /*--------------------------------------------------------------------------*
 * These globals and functions are used to help manage events.
+*
+* Events are copied into a direct IntBuffer supplied by the caller as
+* (type, x, y, time) tuples so all pending events are transferred in a
+* single call.
 *--------------------------------------------------------------------------*/
 
 //--- Constants
-#define DRIVER_CLASS "com/thegaragelab/quickui/Driver"
+#define EVENT_FIELDS 4 //! Number of values stored for each event
 
 //--- Globals
-static JNIEnv   *g_pEnv   = NULL; //! JNI Environment structure
-static jobject   g_obj    = NULL; //! Calling object
-static jclass    g_class  = NULL; //! The class of the calling object
-static jmethodID g_method = NULL; //! The method to invoke
+static jint *g_pEventBuffer = NULL; //! Buffer to copy events into
+static int   g_eventLimit   = 0;    //! Maximum number of events the buffer can hold
+static int   g_eventCount   = 0;    //! Number of events in the buffer
 
-/** Initialise the event capturing function.
+/** Handle an event
  *
- * Ensures the state is set up so the JNI code can call back to the parent
- * object to post event messages.
+ * Copies the event into the caller's buffer. If the buffer is full a drag
+ * replaces the last event if that is also a drag, anything else is
+ * dropped.
+ */
+static GFX_RESULT internal_HandleEvent(GFX_TOUCH_EVENT_INFO *pEventInfo) {
+  jint *pEntry;
+  if(g_pEventBuffer==NULL)
+    return GFX_RESULT_OK;
+  if(g_eventCount<g_eventLimit)
+    pEntry = &g_pEventBuffer[EVENT_FIELDS * g_eventCount++];
+  else {
+    pEntry = &g_pEventBuffer[EVENT_FIELDS * (g_eventCount - 1)];
+    if((pEventInfo->m_event!=GFX_EVENT_DRAG)||(pEntry[0]!=GFX_EVENT_DRAG))
+      return GFX_RESULT_OK;
+    }
+  pEntry[0] = (jint)pEventInfo->m_event;
+  pEntry[1] = (jint)pEventInfo->m_xpos;
+  pEntry[2] = (jint)pEventInfo->m_ypos;
+  pEntry[3] = (jint)pEventInfo->m_time;
+  return GFX_RESULT_OK;
+  }
+
+/*--------------------------------------------------------------------------*
+* Asset registry
+*
+* Images, fonts and palettes are registered once and then referred to by an
+* integer handle (an index into the registry). The data is held in direct
+* buffers which are used in place (a global reference is held to keep them
+* alive), no copy is made in native memory.
+*--------------------------------------------------------------------------*/
+
+//--- Constants
+#define INITIAL_ASSETS 32 //! Initial size of the registry
+#define NO_ASSET       -1 //! Handle used for optional assets that are not present
+
+/** A single entry in the registry
+ */
+typedef struct _ASSET_ENTRY {
+  void    *m_pData;  //! Pointer to the asset data (NULL if the entry is free)
+  jobject  m_buffer; //! Global reference to the direct buffer
+  } ASSET_ENTRY;
+
+//--- Globals
+static ASSET_ENTRY *g_pAssets    = NULL; //! The registry
+static jint         g_assetCount = 0;    //! Number of entries in the registry
+
+/** Add an asset to the registry
  *
  * @param pEnv the JNI environment pointer.
- * @param obj the object calling this method.
+ * @param data the asset data (a direct ByteBuffer).
+ *
+ * @return the handle for the asset or a negative value on error.
  */
-static void initEventCapture(JNIEnv *pEnv, jobject obj) {
-  if(g_class==NULL) {
-    // Get the class and the method description
-    g_class = (*pEnv)->FindClass(pEnv, DRIVER_CLASS);
-    if(g_class==NULL)
-      return;
-    g_method = (*pEnv)->GetMethodID(pEnv, g_class, "pushEvent", "(III)V");
-    if(g_method==NULL) {
-      g_class = NULL;
-      return;
-      }
-    }
-  // Check the object type
-/*
-  if((*pEnv)->IsInstanceOf(pEnv, obj, g_class)) {
-    // Save state
-    g_pEnv = pEnv;
-    g_obj = obj;
+static jint addAsset(JNIEnv *pEnv, jobject data) {
+  if(data==NULL)
+    return -GFX_RESULT_BADARG;
+  // Find a free entry (growing the registry if needed)
+  jint handle;
+  for(handle=0; (handle<g_assetCount)&&(g_pAssets[handle].m_pData!=NULL); handle++);
+  if(handle==g_assetCount) {
+    jint count = (g_assetCount==0)?INITIAL_ASSETS:(g_assetCount * 2);
+    ASSET_ENTRY *pAssets = (ASSET_ENTRY *)realloc(g_pAssets, count * sizeof(ASSET_ENTRY));
+    if(pAssets==NULL)
+      return -GFX_RESULT_MEMORY;
+    memset(&pAssets[g_assetCount], 0, (count - g_assetCount) * sizeof(ASSET_ENTRY));
+    g_pAssets = pAssets;
+    g_assetCount = count;
     }
-*/
-  // Save state
-  g_pEnv = pEnv;
-  g_obj = obj;
+  // The buffer is used as is
+  void *pData = (*pEnv)->GetDirectBufferAddress(pEnv, data);
+  if(pData==NULL)
+    return -GFX_RESULT_BADARG;
+  jobject buffer = (*pEnv)->NewGlobalRef(pEnv, data);
+  if(buffer==NULL)
+    return -GFX_RESULT_MEMORY;
+  g_pAssets[handle].m_pData = pData;
+  g_pAssets[handle].m_buffer = buffer;
+  return handle;
   }
 
-/** Handle an event
+/** Remove an asset from the registry
+ *
+ * @param pEnv the JNI environment pointer.
+ * @param handle the handle returned by addAsset().
  *
- * An implementation of this function is provided by the calling application
- * and is used to receive information about events from the driver.
+ * @return GFX_RESULT_OK if the asset was removed.
  */
-static GFX_RESULT internal_HandleEvent(GFX_TOUCH_EVENT_INFO *pEventInfo) {
-  // Make sure we have the state we need
-  if((g_pEnv==NULL)||(g_obj==NULL)||(g_class==NULL)||(g_method==NULL))
-    return GFX_RESULT_OK;
-  // Invoke the function
-  (*g_pEnv)->CallVoidMethod(g_pEnv, g_obj, g_method, pEventInfo->m_event, pEventInfo->m_xpos, pEventInfo->m_ypos);
+static GFX_RESULT removeAsset(JNIEnv *pEnv, jint handle) {
+  if((handle<0)||(handle>=g_assetCount)||(g_pAssets[handle].m_pData==NULL))
+    return GFX_RESULT_BADARG;
+  (*pEnv)->DeleteGlobalRef(pEnv, g_pAssets[handle].m_buffer);
+  g_pAssets[handle].m_pData = NULL;
+  g_pAssets[handle].m_buffer = NULL;
   return GFX_RESULT_OK;
   }
 
-/** Finished event handling
+/** Look up a registered asset
  *
+ * @param handle the handle returned by addAsset().
+ *
+ * @return a pointer to the asset data or NULL if the handle is not valid.
  */
-static void doneEventCapture() {
-  g_pEnv = NULL;
-  g_obj = NULL;
+static void *lookupAsset(jint handle) {
+  if((handle<0)||(handle>=g_assetCount))
+    return NULL;
+  return g_pAssets[handle].m_pData;
   }
 
 /*--------------------------------------------------------------------------*
@@ -141,43 +199,33 @@ JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxFillRegion(JNIEnv
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawChar
- * Signature: ([BIIIB)I
+ * Signature: (IIIIB)I
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawChar(JNIEnv *pEnv, jobject obj, jbyteArray font, jint x, jint y, jint color, jbyte ch) {
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawChar(JNIEnv *pEnv, jobject obj, jint font, jint x, jint y, jint color, jbyte ch) {
   // The font is required
-  if(font==NULL)
-    return GFX_RESULT_BADARG;
-  GFX_FONT *pFont = (GFX_FONT *)(*pEnv)->GetByteArrayElements(pEnv, font, NULL);
+  GFX_FONT *pFont = (GFX_FONT *)lookupAsset(font);
   if(pFont==NULL)
-    return GFX_RESULT_INTERNAL;
+    return GFX_RESULT_BADARG;
   // Now draw the character
-  jint result = (jint)gfx_DrawChar(x, y, pFont, color, ch);
-  // Clean up and return
-  (*pEnv)->ReleaseByteArrayElements(pEnv, font, pFont, JNI_ABORT);
-  return result;
+  return (jint)gfx_DrawChar(x, y, pFont, color, ch);
   }
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawString
- * Signature: ([BIII[B)I
+ * Signature: (IIII[B)I
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawString(JNIEnv *pEnv, jobject obj, jbyteArray font, jint x, jint y, jint color, jbyteArray str) {
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawString(JNIEnv *pEnv, jobject obj, jint font, jint x, jint y, jint color, jbyteArray str) {
   // The font and string are both required
-  if((font==NULL)||(str==NULL))
+  GFX_FONT *pFont = (GFX_FONT *)lookupAsset(font);
+  if((pFont==NULL)||(str==NULL))
     return GFX_RESULT_BADARG;
-  GFX_FONT *pFont = (GFX_FONT *)(*pEnv)->GetByteArrayElements(pEnv, font, NULL);
-  if(pFont==NULL)
-    return GFX_RESULT_INTERNAL;
   uint8_t *pString = (uint8_t *)(*pEnv)->GetByteArrayElements(pEnv, str, NULL);
-  if(pString==NULL) {
-    (*pEnv)->ReleaseByteArrayElements(pEnv, font, pFont, JNI_ABORT);
+  if(pString==NULL)
     return GFX_RESULT_INTERNAL;
-    }
   // Now draw the character
   jint result = (jint)gfx_DrawString(x, y, pFont, color, pString);
   // Clean up and return
-  (*pEnv)->ReleaseByteArrayElements(pEnv, font, pFont, JNI_ABORT);
   (*pEnv)->ReleaseByteArrayElements(pEnv, str, pString, JNI_ABORT);
   return result;
   }
@@ -185,68 +233,39 @@ JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawString(JNIEnv
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawImage
- * Signature: (II[BIIII[BI[B)I
+ * Signature: (IIIIIIIIII)I
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawImage(JNIEnv *pEnv, jobject obj, jint x, jint y, jbyteArray image, jint sx, jint sy, jint w, jint h, jbyteArray mask, jint color, jbyteArray palette) {
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawImage(JNIEnv *pEnv, jobject obj, jint x, jint y, jint image, jint sx, jint sy, jint w, jint h, jint mask, jint color, jint palette) {
   // The image is required
-  if(image==NULL)
-    return GFX_RESULT_BADARG;
-  GFX_IMAGE *pImage = (GFX_IMAGE *)(*pEnv)->GetByteArrayElements(pEnv, image, NULL);
+  GFX_IMAGE *pImage = (GFX_IMAGE *)lookupAsset(image);
   if(pImage==NULL)
-    return GFX_RESULT_INTERNAL;
+    return GFX_RESULT_BADARG;
   // Collect the rest of the arguments
-  bool bFreeMask = false, bFreePalette = false;
-  GFX_PALETTE *pPalette = NULL;
+  GFX_COLOR *pPalette = NULL;
   GFX_IMAGE *pMask = NULL;
-  jint result = (jint)GFX_RESULT_INTERNAL;
   // Do we have a mask ?
-  if(mask!=NULL) {
-    pMask = (GFX_IMAGE *)(*pEnv)->GetByteArrayElements(pEnv, mask, NULL);
-    if(pMask==NULL)
-      goto gfxDrawImage_cleanup;
-    bFreeMask = true;
+  if(mask!=NO_ASSET) {
+    pMask = (GFX_IMAGE *)lookupAsset(mask);
     // Make sure the mask is a monochrome image
-    if(pMask->m_header.m_bpp!=IMAGE_BPP_1) {
-      result = (jint)GFX_RESULT_BADARG;
-      goto gfxDrawImage_cleanup;
-      }
+    if((pMask==NULL)||(pMask->m_header.m_bpp!=IMAGE_BPP_1))
+      return GFX_RESULT_BADARG;
     }
   // If the main image is 4bpp we need a palette
   if(pImage->m_header.m_bpp==IMAGE_BPP_4) {
-    if(palette==NULL) {
-      result = (jint)GFX_RESULT_BADARG;
-      goto gfxDrawImage_cleanup;
-      }
-    pPalette = (GFX_COLOR *)(*pEnv)->GetByteArrayElements(pEnv, palette, NULL);
+    pPalette = (GFX_COLOR *)lookupAsset(palette);
     if(pPalette==NULL)
-      goto gfxDrawImage_cleanup;
-    bFreePalette = true;
+      return GFX_RESULT_BADARG;
     }
   // Do the rendering
   switch(pImage->m_header.m_bpp) {
     case IMAGE_BPP_1 :
-      result = (jint)gfx_DrawIcon(x, y, pImage, sx, sy, w, h, pMask, color);
-      break;
+      return (jint)gfx_DrawIcon(x, y, pImage, sx, sy, w, h, pMask, color);
     case IMAGE_BPP_4 :
-      result = (jint)gfx_DrawImage4(x, y, pImage, sx, sy, w, h, pMask, pPalette);
-      break;
+      return (jint)gfx_DrawImage4(x, y, pImage, sx, sy, w, h, pMask, pPalette);
     case IMAGE_BPP_16:
-      result = (jint)gfx_DrawImage16(x, y, pImage, sx, sy, w, h, pMask);
-      break;
-    default:
-      result = (jint)GFX_RESULT_BADARG;
+      return (jint)gfx_DrawImage16(x, y, pImage, sx, sy, w, h, pMask);
     }
-gfxDrawImage_cleanup:
-  // Free up the image data
-  (*pEnv)->ReleaseByteArrayElements(pEnv, image, pImage, JNI_ABORT);
-  // Free up mask data (if used)
-  if(bFreeMask&&(pMask!=NULL))
-    (*pEnv)->ReleaseByteArrayElements(pEnv, mask, pMask, JNI_ABORT);
-  // Free up palette data (if used)
-  if(bFreePalette&&(pPalette!=NULL))
-    (*pEnv)->ReleaseByteArrayElements(pEnv, palette, pPalette, JNI_ABORT);
-  // All done
-  return (jint)result;
+  return GFX_RESULT_BADARG;
   }
 
 /*
@@ -269,24 +288,293 @@ JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawBox(JNIEnv *p
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
- * Method:    gfxCheckEvents
- * Signature: ()I
+ * Method:    gfxDrawBuffer
+ * Signature: (IIII[S)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawBuffer(JNIEnv *pEnv, jobject obj, jint x, jint y, jint width, jint height, jshortArray pixels) {
+  // The pixel data is required and must be large enough
+  if((pixels==NULL)||(width<=0)||(height<=0))
+    return GFX_RESULT_BADARG;
+  if((*pEnv)->GetArrayLength(pEnv, pixels)<(width * height))
+    return GFX_RESULT_BADARG;
+  jshort *pPixels = (*pEnv)->GetShortArrayElements(pEnv, pixels, NULL);
+  if(pPixels==NULL)
+    return GFX_RESULT_INTERNAL;
+  // Copy the pixels (the driver takes care of clipping)
+  jint dx, dy;
+  for(dy=0; dy<height; dy++) {
+    for(dx=0; dx<width; dx++)
+      gfx_PutPixel(x + dx, y + dy, (GFX_COLOR)pPixels[(dy * width) + dx]);
+    }
+  // Clean up and return
+  (*pEnv)->ReleaseShortArrayElements(pEnv, pixels, pPixels, JNI_ABORT);
+  return GFX_RESULT_OK;
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxReadBuffer
+ * Signature: (IIII[S)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxReadBuffer(JNIEnv *pEnv, jobject obj, jint x, jint y, jint width, jint height, jshortArray pixels) {
+  // The pixel data is required and must be large enough
+  if((pixels==NULL)||(width<=0)||(height<=0))
+    return GFX_RESULT_BADARG;
+  if((*pEnv)->GetArrayLength(pEnv, pixels)<(width * height))
+    return GFX_RESULT_BADARG;
+  // We can only read from drivers that allow direct framebuffer access
+  const GFX_COLOR *pBuffer = (const GFX_COLOR *)gfx_Framebuffer();
+  if(pBuffer==NULL)
+    return GFX_RESULT_FAILED;
+  jshort *pPixels = (*pEnv)->GetShortArrayElements(pEnv, pixels, NULL);
+  if(pPixels==NULL)
+    return GFX_RESULT_INTERNAL;
+  // Copy each row (pixels outside the display are left unchanged)
+  jint x1 = (x<0)?0:x;
+  jint x2 = ((x + width)>g_GfxDriver.m_width)?g_GfxDriver.m_width:(x + width);
+  jint dy;
+  for(dy=0; (x1<x2)&&(dy<height); dy++) {
+    if(((y + dy)<0)||((y + dy)>=g_GfxDriver.m_height))
+      continue;
+    memcpy(&pPixels[(dy * width) + (x1 - x)], &pBuffer[((y + dy) * g_GfxDriver.m_width) + x1], (x2 - x1) * sizeof(GFX_COLOR));
+    }
+  // Clean up and return
+  (*pEnv)->ReleaseShortArrayElements(pEnv, pixels, pPixels, 0);
+  return GFX_RESULT_OK;
+  }
+
+/*--------------------------------------------------------------------------*
+* Command buffer execution
+*
+* The command codes and layouts must match the definitions in the Java class
+* com.thegaragelab.quickui.CommandBuffer.
+*--------------------------------------------------------------------------*/
+
+//--- Command codes
+#define CMD_BEGIN_PAINT 0 //! No arguments
+#define CMD_END_PAINT   1 //! No arguments
+#define CMD_SET_CLIP    2 //! x1, y1, x2, y2
+#define CMD_PUT_PIXEL   3 //! x, y, color
+#define CMD_FILL_REGION 4 //! x1, y1, x2, y2, color
+#define CMD_DRAW_LINE   5 //! x1, y1, x2, y2, color
+#define CMD_DRAW_BOX    6 //! x1, y1, x2, y2, color
+#define CMD_DRAW_IMAGE  7 //! x, y, image, sx, sy, w, h, mask, color, palette
+#define CMD_DRAW_CHAR   8 //! font, x, y, color, ch
+#define CMD_DRAW_STRING 9 //! font, x, y, color, string
+
+/** Get the size of a command
+ *
+ * @param command the command code.
+ *
+ * @return the number of entries used by the command (including the command
+ *         code itself) or 0 if the command is not known.
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxCheckEvents(JNIEnv *pEnv, jobject obj) {
-  GFX_RESULT result = GFX_RESULT_OK;
-  initEventCapture(pEnv, obj);
+static jint commandSize(jint command) {
+  switch(command) {
+    case CMD_BEGIN_PAINT:
+    case CMD_END_PAINT:
+      return 1;
+    case CMD_PUT_PIXEL:
+      return 4;
+    case CMD_SET_CLIP:
+      return 5;
+    case CMD_FILL_REGION:
+    case CMD_DRAW_LINE:
+    case CMD_DRAW_BOX:
+    case CMD_DRAW_CHAR:
+    case CMD_DRAW_STRING:
+      return 6;
+    case CMD_DRAW_IMAGE:
+      return 11;
+    }
+  return 0;
+  }
+
+/** Look up a string referenced by a command
+ *
+ * @param ppAssets the array of pinned string pointers.
+ * @param count the number of entries in the string array.
+ * @param index the index of the string required.
+ *
+ * @return a pointer to the string or NULL if the index is not valid.
+ */
+static void *getAsset(jbyte **ppAssets, jsize count, jint index) {
+  if((index<0)||(index>=count))
+    return NULL;
+  return ppAssets[index];
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxExecute
+ * Signature: ([II[Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxExecute(JNIEnv *pEnv, jobject obj, jintArray commands, jint length, jobjectArray assets) {
+  // The command list is required
+  if(commands==NULL)
+    return GFX_RESULT_BADARG;
+  if((length<0)||(length>(*pEnv)->GetArrayLength(pEnv, commands)))
+    return GFX_RESULT_BADARG;
+  // Find how many strings are in use (the table is terminated by a NULL)
+  jsize count = 0, maxCount = (assets==NULL)?0:(*pEnv)->GetArrayLength(pEnv, assets);
+  jbyteArray *pArrays = NULL;
+  jbyte **ppAssets = NULL;
+  jint *pCommands = NULL;
+  jint result = (jint)GFX_RESULT_OK;
+  if(maxCount>0) {
+    pArrays = (jbyteArray *)calloc(maxCount, sizeof(jbyteArray));
+    ppAssets = (jbyte **)calloc(maxCount, sizeof(jbyte *));
+    if((pArrays==NULL)||(ppAssets==NULL)) {
+      result = (jint)GFX_RESULT_MEMORY;
+      goto gfxExecute_cleanup;
+      }
+    // Every string is held until the list has been processed
+    if((*pEnv)->EnsureLocalCapacity(pEnv, maxCount)!=0) {
+      result = (jint)GFX_RESULT_MEMORY;
+      goto gfxExecute_cleanup;
+      }
+    // Pin each string once for the whole command list
+    for(count=0; count<maxCount; count++) {
+      pArrays[count] = (jbyteArray)(*pEnv)->GetObjectArrayElement(pEnv, assets, count);
+      if(pArrays[count]==NULL)
+        break;
+      ppAssets[count] = (*pEnv)->GetByteArrayElements(pEnv, pArrays[count], NULL);
+      if(ppAssets[count]==NULL) {
+        (*pEnv)->DeleteLocalRef(pEnv, pArrays[count]);
+        result = (jint)GFX_RESULT_INTERNAL;
+        goto gfxExecute_cleanup;
+        }
+      }
+    }
+  pCommands = (*pEnv)->GetIntArrayElements(pEnv, commands, NULL);
+  if(pCommands==NULL) {
+    result = (jint)GFX_RESULT_INTERNAL;
+    goto gfxExecute_cleanup;
+    }
+  // Now process each command
+  jint *pArgs;
+  GFX_IMAGE *pImage, *pMask;
+  GFX_COLOR *pPalette;
+  jint index = 0, size;
+  while(index<length) {
+    // Make sure the whole command is present
+    size = commandSize(pCommands[index]);
+    if((size==0)||(size>(length - index))) {
+      result = (jint)GFX_RESULT_BADARG;
+      break;
+      }
+    pArgs = &pCommands[index + 1];
+    switch(pCommands[index]) {
+      case CMD_BEGIN_PAINT:
+        gfx_BeginPaint();
+        break;
+      case CMD_END_PAINT:
+        gfx_EndPaint();
+        break;
+      case CMD_SET_CLIP:
+        gfx_SetClip(pArgs[0], pArgs[1], pArgs[2], pArgs[3]);
+        break;
+      case CMD_PUT_PIXEL:
+        gfx_PutPixel(pArgs[0], pArgs[1], pArgs[2]);
+        break;
+      case CMD_FILL_REGION:
+        gfx_FillRegion(pArgs[0], pArgs[1], pArgs[2], pArgs[3], pArgs[4]);
+        break;
+      case CMD_DRAW_LINE:
+        gfx_DrawLine(pArgs[0], pArgs[1], pArgs[2], pArgs[3], pArgs[4]);
+        break;
+      case CMD_DRAW_BOX:
+        gfx_DrawBox(pArgs[0], pArgs[1], pArgs[2], pArgs[3], pArgs[4]);
+        break;
+      case CMD_DRAW_IMAGE:
+        // Apply the same checks as gfxDrawImage()
+        pImage = (GFX_IMAGE *)lookupAsset(pArgs[2]);
+        pMask = (GFX_IMAGE *)lookupAsset(pArgs[7]);
+        pPalette = (GFX_COLOR *)lookupAsset(pArgs[9]);
+        if((pImage!=NULL)&&((pArgs[7]==NO_ASSET)||((pMask!=NULL)&&(pMask->m_header.m_bpp==IMAGE_BPP_1)))&&((pPalette!=NULL)||(pImage->m_header.m_bpp!=IMAGE_BPP_4)))
+          gfx_DrawImage(pArgs[0], pArgs[1], pImage, pArgs[3], pArgs[4], pArgs[5], pArgs[6], pMask, pArgs[8], pPalette);
+        break;
+      case CMD_DRAW_CHAR:
+        if(lookupAsset(pArgs[0])!=NULL)
+          gfx_DrawChar(pArgs[1], pArgs[2], (GFX_FONT *)lookupAsset(pArgs[0]), pArgs[3], (char)pArgs[4]);
+        break;
+      case CMD_DRAW_STRING:
+        if((lookupAsset(pArgs[0])!=NULL)&&(getAsset(ppAssets, count, pArgs[4])!=NULL))
+          gfx_DrawString(pArgs[1], pArgs[2], (GFX_FONT *)lookupAsset(pArgs[0]), pArgs[3], (const char *)getAsset(ppAssets, count, pArgs[4]));
+        break;
+      }
+    index += size;
+    }
+gfxExecute_cleanup:
+  // Release the command list
+  if(pCommands!=NULL)
+    (*pEnv)->ReleaseIntArrayElements(pEnv, commands, pCommands, JNI_ABORT);
+  // Release all the strings we pinned
+  jsize asset;
+  for(asset=0; asset<count; asset++) {
+    (*pEnv)->ReleaseByteArrayElements(pEnv, pArrays[asset], ppAssets[asset], JNI_ABORT);
+    (*pEnv)->DeleteLocalRef(pEnv, pArrays[asset]);
+    }
+  free(pArrays);
+  free(ppAssets);
+  return result;
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxReadEvents
+ * Signature: (Ljava/nio/IntBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxReadEvents(JNIEnv *pEnv, jobject obj, jobject buffer) {
+  GFX_RESULT result;
+  g_pEventBuffer = (jint *)(*pEnv)->GetDirectBufferAddress(pEnv, buffer);
+  if(g_pEventBuffer==NULL)
+    return (jint)GFX_RESULT_BADARG;
+  g_eventLimit = (int)((*pEnv)->GetDirectBufferCapacity(pEnv, buffer) / EVENT_FIELDS);
+  g_eventCount = 0;
   result = gfx_CheckEvents(internal_HandleEvent);
-  doneEventCapture();
-  return (jint)result;
+  g_pEventBuffer = NULL;
+  if(result!=GFX_RESULT_OK)
+    return (jint)result;
+  return (jint)g_eventCount;
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxWaitEvents
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxWaitEvents(JNIEnv *pEnv, jobject obj, jint timeout) {
+  if(timeout<=0)
+    return GFX_RESULT_OK;
+  return (jint)gfx_WaitEvents((uint32_t)timeout);
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxWakeup
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxWakeup(JNIEnv *pEnv, jobject obj) {
+  return (jint)gfx_Wakeup();
   }
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxRegisterAsset
- * Signature: (I[BII)I
+ * Signature: (Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxRegisterAsset(JNIEnv *pEnv, jobject obj, jobject data) {
+  return addAsset(pEnv, data);
+  }
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxUnregisterAsset
+ * Signature: (I)I
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxRegisterAsset (JNIEnv *pEnv, jobject obj, jint type, jbyteArray data, jint offset, jint size) {
-  return (jint)addAsset(pEnv, data, offset, size);
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxUnregisterAsset(JNIEnv *pEnv, jobject obj, jint handle) {
+  return (jint)removeAsset(pEnv, handle);
   }
 
 /*
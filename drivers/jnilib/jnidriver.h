@@ -58,10 +58,10 @@ JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxFillRegion
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawImage
- * Signature: (II[BIIII[BI[B)I
+ * Signature: (IIIIIIIIII)I
  */
 JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawImage
-  (JNIEnv *, jobject, jint, jint, jbyteArray, jint, jint, jint, jint, jbyteArray, jint, jbyteArray);
+  (JNIEnv *, jobject, jint, jint, jint, jint, jint, jint, jint, jint, jint, jint);
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
@@ -82,27 +82,83 @@ JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawBox
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawChar
- * Signature: ([BIIIB)I
+ * Signature: (IIIIB)I
  */
 JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawChar
-  (JNIEnv *, jobject, jbyteArray, jint, jint, jint, jbyte);
+  (JNIEnv *, jobject, jint, jint, jint, jint, jbyte);
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxDrawString
- * Signature: ([BIII[B)I
+ * Signature: (IIII[B)I
  */
 JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawString
-  (JNIEnv *, jobject, jbyteArray, jint, jint, jint, jbyteArray);
+  (JNIEnv *, jobject, jint, jint, jint, jint, jbyteArray);
 
 /*
  * Class:     com_thegaragelab_quickui_Driver
- * Method:    gfxCheckEvents
+ * Method:    gfxDrawBuffer
+ * Signature: (IIII[S)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxDrawBuffer
+  (JNIEnv *, jobject, jint, jint, jint, jint, jshortArray);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxReadBuffer
+ * Signature: (IIII[S)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxReadBuffer
+  (JNIEnv *, jobject, jint, jint, jint, jint, jshortArray);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxExecute
+ * Signature: ([II[Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxExecute
+  (JNIEnv *, jobject, jintArray, jint, jobjectArray);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxWaitEvents
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxWaitEvents
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxWakeup
  * Signature: ()I
  */
-JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxCheckEvents
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxWakeup
   (JNIEnv *, jobject);
 
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxRegisterAsset
+ * Signature: (Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxRegisterAsset
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxUnregisterAsset
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxUnregisterAsset
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     com_thegaragelab_quickui_Driver
+ * Method:    gfxReadEvents
+ * Signature: (Ljava/nio/IntBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_thegaragelab_quickui_Driver_gfxReadEvents
+  (JNIEnv *, jobject, jobject);
+
 /*
  * Class:     com_thegaragelab_quickui_Driver
  * Method:    gfxGetWidth
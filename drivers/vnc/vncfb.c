@@ -9,6 +9,7 @@
 #include <stdint.h>
 #include <stdbool.h>
 #include <string.h>
+#include <sys/time.h>
 #include <quickgfx.h>
 #include <gfxdriver.h>
 #include <rfb.h>
@@ -25,6 +26,9 @@
 #define MAX_DISPLAY_WIDTH  1024
 #define MAX_DISPLAY_HEIGHT 768
 
+/* Longest single wait for events (in milliseconds) */
+#define MAX_WAIT_SLICE 500
+
 /** The global graphics driver structure */
 GFX_DRIVER g_GfxDriver;
 
@@ -37,11 +41,40 @@ static int              g_minX;
 static int              g_maxX;
 static int              g_minY;
 static int              g_maxY;
+static bool             g_updatePending;
+static uint32_t         g_updateTime;
 
 //---------------------------------------------------------------------------
 // Event management
 //---------------------------------------------------------------------------
 
+/** Get the current time
+ *
+ * @return the current time in milliseconds (the value wraps so only the
+ *         difference between two values is meaningful).
+ */
+static uint32_t vnc_Now() {
+  struct timeval now;
+  gettimeofday(&now, NULL);
+  return (uint32_t)((now.tv_sec * 1000) + (now.tv_usec / 1000));
+  }
+
+/** Let the VNC server process events and send updates
+ *
+ * The server defers sending a modified region to the clients for
+ * deferUpdateTime milliseconds after it was marked. Once a call is made
+ * after that time has passed the update has been sent and is no longer
+ * pending.
+ *
+ * @param timeout the maximum time to wait for activity (in milliseconds).
+ */
+static void vnc_ProcessEvents(uint32_t timeout) {
+  bool due = g_updatePending&&((vnc_Now() - g_updateTime)>=(uint32_t)g_pScreenInfo->deferUpdateTime);
+  rfbProcessEvents(g_pScreenInfo, timeout * 1000);
+  if(due)
+    g_updatePending = false;
+  }
+
 /** Handle movement/touch events from the remote client
  *
  * @param buttonMask indicates the state of the pointer buttons.
@@ -97,8 +130,13 @@ static GFX_RESULT gfx_vnc_EndPaint() {
   if(g_paintLevel>0)
     return GFX_RESULT_OK;
   // Yes, we do - send an update (if one is available)
-  if((g_maxX>0)&&(g_maxY>0))
+  if((g_maxX>0)&&(g_maxY>0)) {
     rfbMarkRectAsModified(g_pScreenInfo, g_minX, g_minY, g_maxX + 1, g_maxY + 1);
+    // The server defers from the first modification, not the latest one
+    if(!g_updatePending)
+      g_updateTime = vnc_Now();
+    g_updatePending = true;
+    }
   // Clear the region
   g_minX = g_GfxDriver.m_width - 1;
   g_maxX = 0;
@@ -111,10 +149,36 @@ static GFX_RESULT gfx_vnc_EndPaint() {
 /** Check for pending events
  */
 static GFX_RESULT gfx_vnc_CheckEvents(_gfx_HandleEvent pfHandleEvent) {
-  rfbProcessEvents(g_pScreenInfo, 10000);
+  vnc_ProcessEvents(0);
   return gfx_common_CheckEvents(pfHandleEvent);
   }
 
+/** Wait for events
+ *
+ * The wake up pipe is part of the set of descriptors the VNC server waits
+ * on so gfx_Wakeup() interrupts the wait immediately. While a display update
+ * marked by gfx_vnc_EndPaint() is being deferred by the server the wait is
+ * limited to the time remaining before it is due so it is still sent on
+ * time.
+ *
+ * @param timeout the maximum time to wait (in milliseconds).
+ */
+static GFX_RESULT gfx_vnc_WaitEvents(uint32_t timeout) {
+  uint32_t slice, elapsed;
+  while(!gfx_common_EventsPending()&&(timeout>0)) {
+    slice = MAX_WAIT_SLICE;
+    if(g_updatePending) {
+      elapsed = vnc_Now() - g_updateTime;
+      slice = (elapsed<(uint32_t)g_pScreenInfo->deferUpdateTime)?((uint32_t)g_pScreenInfo->deferUpdateTime - elapsed):0;
+      }
+    if(slice>timeout)
+      slice = timeout;
+    vnc_ProcessEvents(slice);
+    timeout -= slice;
+    }
+  return GFX_RESULT_OK;
+  }
+
 /** Get the framebuffer the driver is using
  *
  * This function may return a pointer to the framebuffer used by the driver.
@@ -140,6 +204,8 @@ GFX_RESULT gfx_Init(uint16_t width, uint16_t height) {
   g_maxX = 0;
   g_minY = 0;
   g_maxY = 0;
+  g_updatePending = false;
+  g_updateTime = 0;
   // Verify the width and height requested
   if(width<=0)
     width = DEFAULT_DISPLAY_WIDTH;
@@ -170,6 +236,13 @@ GFX_RESULT gfx_Init(uint16_t width, uint16_t height) {
     return GFX_RESULT_MEMORY;
   g_pScreenInfo->frameBuffer = (char *)g_pFrameBuffer;
   rfbInitServer(g_pScreenInfo);
+  // Include the wake up pipe in the descriptors the server waits on
+  int wakeup = gfx_common_WakeupFd();
+  if(wakeup<0)
+    return GFX_RESULT_INTERNAL;
+  FD_SET(wakeup, &(g_pScreenInfo->allFds));
+  if(wakeup>g_pScreenInfo->maxFd)
+    g_pScreenInfo->maxFd = wakeup;
   // Set up the driver API
   g_GfxDriver.m_width = width;
   g_GfxDriver.m_height = height;
@@ -188,6 +261,8 @@ GFX_RESULT gfx_Init(uint16_t width, uint16_t height) {
   g_GfxDriver.m_pfDrawBox = gfx_common_DrawBox;
   g_GfxDriver.m_pfCheckEvents = gfx_vnc_CheckEvents;
   g_GfxDriver.m_pfAddEvent = gfx_common_AddEvent;
+  g_GfxDriver.m_pfWaitEvents = gfx_vnc_WaitEvents;
+  g_GfxDriver.m_pfWakeup = gfx_common_Wakeup;
   // Set the initial clipping to full screen
   gfx_SetClip(0, 0, g_GfxDriver.m_width - 1, g_GfxDriver.m_height - 1);
   // All done
@@ -0,0 +1,84 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.lang.management.*;
+import com.thegaragelab.quickui.controls.*;
+
+/** Check that the steady state frame loop does not allocate.
+ * 
+ * Builds a small screen and then repeatedly invalidates the labels,
+ * repaints and dispatches a touch/release pair to a button. One label is
+ * too wide to be pre-rendered so it's text is always sent to the driver as
+ * a string. The number of bytes allocated by the thread over the measured
+ * frames is reported and the process exits with a non-zero status if any
+ * allocation was seen.
+ * 
+ * The software driver is used unless the 'quickui.driver' property is set.
+ * Setting it to 'native' (with the JNI library on java.library.path)
+ * checks the native path instead, recording commands unless 'quickui.batch'
+ * is set to 'false'.
+ */
+public class AllocationTest {
+  //--- Constants
+  private static final int WARMUP_FRAMES   = 20000; //! Frames to run before measuring
+  private static final int MEASURED_FRAMES = 10000; //! Frames to measure
+
+  //--- Class variables
+  private static int m_touched; //! Number of button events seen
+
+  /** Program entry point
+   * 
+   * @param args command line arguments (ignored).
+   */
+  public static void main(String[] args) {
+    if(System.getProperty("quickui.driver")==null)
+      System.setProperty("quickui.driver", "software");
+    // Set up the screen
+    Application app = new Application();
+    Label label = new Label(app, new Rectangle(4, 4, 120, 20), "Label");
+    Label wide = new Label(app, new Rectangle(4, 64, 312, 20), "A label that is much too wide to be drawn as a single image");
+    Button button = new Button(app, new Rectangle(4, 30, 120, 30), "Button");
+    button.setEventHandler(IButton.EVENT_TOUCHED, new IControlEventHandler() {
+      public void onEvent(IWindow sender, int event, Object data) {
+        m_touched++;
+        }
+      });
+    TouchEvent touch = new TouchEvent(TouchEvent.GFX_EVENT_TOUCH, 20, 40, 0);
+    TouchEvent release = new TouchEvent(TouchEvent.GFX_EVENT_RELEASE, 20, 40, 0);
+    app.doRepaint(true);
+    // Run the frames
+    runFrames(app, label, wide, touch, release, WARMUP_FRAMES);
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long before = mx.getThreadAllocatedBytes(thread);
+    runFrames(app, label, wide, touch, release, MEASURED_FRAMES);
+    long allocated = mx.getThreadAllocatedBytes(thread) - before;
+    System.out.println("frames=" + MEASURED_FRAMES + " allocated=" + allocated + " bytes/frame=" + ((double)allocated / MEASURED_FRAMES) + " touched=" + m_touched);
+    if(allocated>0)
+      System.exit(1);
+    }
+
+  /** Run a number of frames
+   * 
+   * @param app the application being tested.
+   * @param label a control to invalidate each frame.
+   * @param wide another control to invalidate each frame.
+   * @param touch the touch event to dispatch.
+   * @param release the release event to dispatch.
+   * @param frames the number of frames to run.
+   */
+  private static void runFrames(Application app, Label label, Label wide, TouchEvent touch, TouchEvent release, int frames) {
+    for(int frame=0; frame<frames; frame++) {
+      label.setDirty(true);
+      wide.setDirty(true);
+      app.doRepaint(false);
+      app.doTouchEvent(touch);
+      app.doTouchEvent(release);
+      app.doRepaint(false);
+      }
+    }
+
+  }
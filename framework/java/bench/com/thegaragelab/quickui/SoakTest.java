@@ -0,0 +1,113 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.lang.ref.*;
+import java.util.*;
+import com.thegaragelab.quickui.controls.*;
+
+/** Check that rebuilding screens does not leak memory.
+ * 
+ * Builds a screen of buttons (each with a handler that refers to the
+ * screen and a block of data), paints it, touches it and removes it again,
+ * thousands of times using the software driver. The application keeps a
+ * reference to one button from each screen as real applications often do.
+ * 
+ * The heap in use after a full collection is reported periodically. The
+ * process exits with a non-zero status if the data for any removed screen
+ * is still reachable (the kept button must not hold on to it's handlers)
+ * or the heap grows by more than MAX_GROWTH bytes after the warm up
+ * rounds.
+ */
+public class SoakTest {
+  //--- Constants
+  private static final int ROUNDS       = 5000;        //! Number of screens to build
+  private static final int WARMUP       = 1000;        //! Rounds to run before the baseline is taken
+  private static final int REPORT       = 1000;        //! Rounds between reports
+  private static final int BUTTONS      = 40;          //! Buttons on each screen
+  private static final int PAYLOAD_SIZE = 4096;        //! Bytes of data referenced by each handler
+  private static final long MAX_GROWTH  = 256 * 1024;  //! Largest allowed growth in the heap (in bytes)
+
+  //--- Class variables
+  private static Button m_kept; //! Button kept from the last screen
+
+  /** Get the amount of heap in use
+   * 
+   * @return the number of bytes in use after a full collection.
+   */
+  private static long getUsed() {
+    Runtime runtime = Runtime.getRuntime();
+    for(int count=0; count<3; count++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+  /** Build, use and remove a single screen
+   * 
+   * @param app the application to add the screen to.
+   * @param payloads the list to add a reference to the screen data to.
+   */
+  private static void buildScreen(Application app, List<WeakReference<byte[]>> payloads) {
+    final Container screen = new Container(app, new Rectangle(0, 0, 320, 240), 0, 0);
+    final byte[] payload = new byte[PAYLOAD_SIZE];
+    payloads.add(new WeakReference<byte[]>(payload));
+    for(int index=0; index<BUTTONS; index++) {
+      Button button = new Button(screen, new Rectangle((index % 8) * 40, (index / 8) * 40, 38, 38), "B" + index);
+      button.setEventHandler(IButton.EVENT_TOUCHED, new IControlEventHandler() {
+        public void onEvent(IWindow sender, int event, Object data) {
+          screen.setDirty(payload.length>0);
+          }
+        });
+      if(index==0)
+        m_kept = button;
+      }
+    app.doRepaint(true);
+    app.doTouchEvent(new TouchEvent(TouchEvent.GFX_EVENT_TOUCH, 100, 50, 0));
+    app.doTouchEvent(new TouchEvent(TouchEvent.GFX_EVENT_RELEASE, 100, 50, 0));
+    app.remove(screen);
+    }
+
+  /** Program entry point
+   * 
+   * @param args command line arguments. The first (optional) argument is
+   *             the number of screens to build.
+   */
+  public static void main(String[] args) {
+    if(System.getProperty("quickui.driver")==null)
+      System.setProperty("quickui.driver", "software");
+    int rounds = (args.length>0)?Integer.parseInt(args[0]):ROUNDS;
+    Application app = new Application();
+    List<WeakReference<byte[]>> payloads = new ArrayList<WeakReference<byte[]>>();
+    long baseline = -1, used = 0;
+    for(int round=1; round<=rounds; round++) {
+      buildScreen(app, payloads);
+      if((round==WARMUP)||((round % REPORT)==0)||(round==rounds)) {
+        used = getUsed();
+        if(round==WARMUP)
+          baseline = used;
+        // Forget the screens that have been collected
+        Iterator<WeakReference<byte[]>> refs = payloads.iterator();
+        while(refs.hasNext()) {
+          if(refs.next().get()==null)
+            refs.remove();
+          }
+        System.out.println("round=" + round + " heapKB=" + (used / 1024) + " liveScreens=" + payloads.size());
+        }
+      }
+    // Check the results
+    boolean failed = false;
+    if(payloads.size()>0) {
+      System.out.println("FAIL: " + payloads.size() + " removed screens are still reachable");
+      failed = true;
+      }
+    if((baseline>=0)&&((used - baseline)>MAX_GROWTH)) {
+      System.out.println("FAIL: heap grew by " + ((used - baseline) / 1024) + "KB");
+      failed = true;
+      }
+    if(failed)
+      System.exit(1);
+    }
+
+  }
@@ -0,0 +1,72 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui.controls;
+
+//--- Imports
+import java.lang.management.*;
+import com.thegaragelab.quickui.*;
+
+/** Microbenchmark for firing control events.
+ * 
+ * Creates a number of buttons (each with a single handler) using the
+ * software driver and fires events on them in turn. The time taken and the
+ * number of bytes allocated by the thread are reported for each round.
+ */
+public class ControlEventsBenchmark {
+  //--- Constants
+  private static final int CONTROLS = 50;       //! Number of controls to fire events on
+  private static final int ROUNDS   = 3;        //! Number of rounds to run
+  private static final int FIRES    = 10000000; //! Default number of events to fire in each round
+
+  //--- Class variables
+  private static long m_count; //! Number of events handled
+
+  /** A button that allows events to be fired directly
+   */
+  private static class TestButton extends Button {
+    TestButton(Container parent) {
+      super(parent, new Rectangle(0, 0, 50, 20), "Button");
+      }
+
+    void fire() {
+      fireEvent(EVENT_TOUCHED, null);
+      }
+    }
+
+  /** Program entry point
+   * 
+   * @param args command line arguments. The first (optional) argument is
+   *             the number of events to fire in each round.
+   */
+  public static void main(String[] args) {
+    if(System.getProperty("quickui.driver")==null)
+      System.setProperty("quickui.driver", "software");
+    int fires = (args.length>0)?Integer.parseInt(args[0]):FIRES;
+    // Set up the controls
+    Application app = new Application();
+    TestButton[] buttons = new TestButton[CONTROLS];
+    for(int index=0; index<CONTROLS; index++) {
+      buttons[index] = new TestButton(app);
+      buttons[index].setEventHandler(IButton.EVENT_TOUCHED, new IControlEventHandler() {
+        public void onEvent(IWindow sender, int event, Object data) {
+          m_count++;
+          }
+        });
+      }
+    // Run the rounds (the first one also serves as a warm up)
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    for(int round=0; round<ROUNDS; round++) {
+      long allocated = mx.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      for(int index=0; index<fires; index++)
+        buttons[index % CONTROLS].fire();
+      long elapsed = System.nanoTime() - start;
+      allocated = mx.getThreadAllocatedBytes(thread) - allocated;
+      System.out.println("round=" + round + " ns/fire=" + ((double)elapsed / fires) + " bytes/fire=" + ((double)allocated / fires));
+      }
+    System.out.println("handled=" + m_count);
+    }
+
+  }
@@ -7,6 +7,10 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
+//--- Imports
+import java.util.*;
+import java.util.concurrent.*;
+
 /** A single application.
  * 
  *  The Application is a special type of container window that is the top of
@@ -15,7 +19,11 @@ package com.thegaragelab.quickui;
  */
 public class Application extends Container {
   //--- Constants
-  private static final String SYSTEM_RESOURCE = "system";
+  private static final String SYSTEM_RESOURCE    = "system";
+  private static final int    INITIAL_CLIP_DEPTH = 16; //! Initial size of the clip stack
+  private static final long   MAX_WAIT           = 1000; //! Longest time to wait for something to happen (in milliseconds)
+  private static final long   NANOS_PER_MILLI    = 1000000; //! Conversion from milliseconds to nanoseconds
+  private static final int    MAX_TASKS          = 64; //! Maximum number of posted tasks to run each time around the loop
   
   //--- System icons
   public static final  int SYSTEM_ICON_SIZE = 16;         //! Size of system icons
@@ -61,14 +69,61 @@ public class Application extends Container {
   //--- Class variables
   private static Application m_instance;
   
+  /** Drawing state saved while rendering an offscreen layer
+   */
+  private static class LayerState {
+    FrameBuffer m_layer; //! The previous drawing target
+    Rectangle[] m_clips; //! The previous clip stack
+    int         m_depth; //! The previous depth of the clip stack
+    Rectangle   m_clip;  //! The previous effective clip
+    
+    LayerState(FrameBuffer layer, Rectangle[] clips, int depth, Rectangle clip) {
+      m_layer = layer;
+      m_clips = clips;
+      m_depth = depth;
+      m_clip = clip;
+      }
+    }
+  
+  /** A dialog being shown and the display beneath it
+   */
+  private static class DialogState {
+    Dialog      m_dialog; //! The dialog being shown
+    Rectangle   m_area;   //! The area the dialog covered when the display was saved
+    FrameBuffer m_under;  //! The display beneath the dialog (null if it could not be saved)
+    
+    DialogState(Dialog dialog) {
+      m_dialog = dialog;
+      m_area = new Rectangle(0, 0, 0, 0);
+      }
+    }
+  
   //--- Instance variables
   private Driver     m_driver;     //! The graphics driver instance
-  private Point      m_offset;     //! The offset for painting operations
+  private int        m_offsetX;    //! The X offset for painting operations
+  private int        m_offsetY;    //! The Y offset for painting operations
   private Palette    m_palette;    //! The system palette
   private Font       m_font;       //! The system font
   private Icon       m_icons;      //! The system icons
+  private Rectangle[] m_iconAreas; //! Location of each system icon within m_icons
   private IWindow    m_target;     //! The window currently accepting touch events.
-  private Dialog     m_dialog;     //! The current dialog (if any)
+  private LinkedList<DialogState> m_dialogs; //! Dialogs being shown (the first is on top)
+  private DamageTracker m_damage;  //! Regions to repaint
+  private int        m_damageArea; //! Number of pixels repainted in the last partial update
+  private Rectangle[] m_clips;     //! Stack of clipping regions (absolute, entries are reused)
+  private int        m_clipDepth;  //! Number of entries in use on the clip stack
+  private Rectangle  m_clip;       //! The effective clipping region (absolute)
+  private boolean    m_clipDirty;  //! True if the driver clip needs to be updated
+  private FrameBuffer m_layer;     //! The layer being rendered (null if drawing to the display)
+  private LinkedList<LayerState> m_saved; //! Saved state for layers being rendered
+  private LayerCache m_layers;     //! Offscreen buffers for cached containers
+  private volatile Thread m_thread; //! The thread running the event loop
+  private volatile boolean m_running; //! True until stop() is called
+  private long       m_frameInterval; //! Minimum time between repaints (in nanoseconds)
+  private FrameStats m_stats;      //! Frame timing statistics
+  private Queue<Runnable> m_tasks; //! Tasks posted from other threads
+  private Executor   m_executor;   //! Runs background activities
+  private Point      m_where;      //! Location passed to the touch target (reused)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -115,10 +170,23 @@ public class Application extends Container {
     super.initialiseState();
     // Initialise our own state
     m_driver = Driver.getInstance();
-    m_offset = Point.ORIGIN;
+    m_damage = new DamageTracker();
+    m_clips = new Rectangle[INITIAL_CLIP_DEPTH];
+    m_clipDepth = 0;
+    m_clip = new Rectangle(getAbsolute());
+    m_clipDirty = true;
+    m_saved = new LinkedList<LayerState>();
+    m_dialogs = new LinkedList<DialogState>();
+    m_layers = new LayerCache();
+    m_stats = new FrameStats();
+    m_tasks = new ConcurrentLinkedQueue<Runnable>();
+    m_where = new Point(0, 0);
     // Load our assets
     m_palette = Asset.loadPalette(SYSTEM_RESOURCE);
     m_icons = Asset.loadIcon(SYSTEM_RESOURCE);
+    m_iconAreas = new Rectangle[SYSTEM_ICON_MAX + 1];
+    for(int icon=0; icon<=SYSTEM_ICON_MAX; icon++)
+      m_iconAreas[icon] = new Rectangle(icon * SYSTEM_ICON_SIZE, 0, SYSTEM_ICON_SIZE, SYSTEM_ICON_SIZE);
     m_font = Asset.loadFont(SYSTEM_RESOURCE);
     }
   
@@ -178,8 +246,11 @@ public class Application extends Container {
    */
   public void onEraseBackground() {
     fillRect(
-      new Rectangle(Point.ORIGIN, this),
-      Application.getInstance().getSystemColor(Application.SYS_COLOR_BACKGROUND)
+      0,
+      0,
+      getWidth(),
+      getHeight(),
+      Application.getInstance().getSystemColor(Application.SYS_COLOR_BACKGROUND).getNativeFormat()
       );
     }
   
@@ -226,6 +297,20 @@ public class Application extends Container {
   // Implementation of Container
   //-------------------------------------------------------------------------
   
+  /** Determine if anything needs to be repainted
+   * 
+   * @return true if a window (or the active dialog) needs to be repainted.
+   */
+  @Override
+  boolean needsRepaint() {
+    // Only the top dialog is shown while one is active
+    if(!m_dialogs.isEmpty()) {
+      Dialog dialog = m_dialogs.peek().m_dialog;
+      return (!dialog.isVisible())||dialog.needsRepaint();
+      }
+    return super.needsRepaint();
+    }
+  
   /** Called to do a repaint of the window
    * 
    * This is an internal helper to manage the painting process. Child
@@ -239,17 +324,29 @@ public class Application extends Container {
   void doRepaint(boolean force) {
     // Set the offset to origin
     setOffset(Point.ORIGIN);
-    // If we have an active dialog, show it only
-    if(m_dialog!=null) {
-      if(m_dialog.isVisible()) {
-        m_dialog.doRepaint(force);
-        return;
-        }
-      m_dialog = null;
-      force = true;
+    // Put back the display beneath any dialogs that have been hidden
+    while((!m_dialogs.isEmpty())&&!m_dialogs.peek().m_dialog.isVisible()) {
+      if(!restoreUnder(m_dialogs.pop()))
+        force = true;
       }
     // And start the repaint sequence
-    super.doRepaint(force);
+    if(m_dialogs.isEmpty()) {
+      super.doRepaint(force);
+      return;
+      }
+    // If we have an active dialog, show it only
+    if(!force) {
+      m_dialogs.peek().m_dialog.doRepaint(false);
+      return;
+      }
+    // Repaint everything, saving the display beneath each dialog again
+    super.doRepaint(true);
+    Iterator<DialogState> states = m_dialogs.descendingIterator();
+    while(states.hasNext()) {
+      DialogState state = states.next();
+      saveUnder(state);
+      state.m_dialog.doRepaint(true);
+      }
     }
 
   //-------------------------------------------------------------------------
@@ -262,10 +359,238 @@ public class Application extends Container {
    */
   @Override
   void setOffset(IPoint offset) {
-    if(offset==null)
-      m_offset = Point.ORIGIN;
+    if(offset==null) {
+      m_offsetX = 0;
+      m_offsetY = 0;
+      }
+    else {
+      m_offsetX = offset.getX();
+      m_offsetY = offset.getY();
+      }
+    }
+  
+  /** Get the damage tracker
+   * 
+   * @return the DamageTracker used to collect areas to repaint.
+   */
+  DamageTracker getDamageTracker() {
+    return m_damage;
+    }
+  
+  /** Record the area repainted by a partial update
+   * 
+   * @param area the number of pixels in the damaged regions.
+   */
+  void setDamageArea(int area) {
+    m_damageArea = area;
+    }
+  
+  /** Get the base clipping region
+   * 
+   * @return the region on the top of the clip stack or the entire display
+   *         if the stack is empty.
+   */
+  private IRectangle getClipBase() {
+    if(m_clipDepth==0)
+      return getAbsolute();
+    return m_clips[m_clipDepth - 1];
+    }
+  
+  /** Reset the effective clipping region to the top of the stack
+   */
+  private void resetClip() {
+    IRectangle base = getClipBase();
+    m_clip.x = base.getX();
+    m_clip.y = base.getY();
+    m_clip.width = base.getWidth();
+    m_clip.height = base.getHeight();
+    m_clipDirty = true;
+    }
+  
+  /** Push a new clipping region on to the stack
+   * 
+   * The new region is intersected with the current region so painting can
+   * never extend outside of any of the regions already on the stack.
+   * 
+   * @param rect the new clipping region (in absolute co-ordinates).
+   */
+  void pushClip(IRectangle rect) {
+    // Make sure we have room
+    if(m_clipDepth==m_clips.length)
+      m_clips = Arrays.copyOf(m_clips, m_clips.length * 2);
+    if(m_clips[m_clipDepth]==null)
+      m_clips[m_clipDepth] = new Rectangle(0, 0, 0, 0);
+    // Add the new region
+    Rectangle.intersection(getClipBase(), rect, m_clips[m_clipDepth]);
+    m_clipDepth++;
+    resetClip();
+    }
+  
+  /** Remove the top clipping region from the stack
+   * 
+   * This restores the clipping region in effect before the matching call
+   * to pushClip().
+   */
+  void popClip() {
+    if(m_clipDepth>0)
+      m_clipDepth--;
+    resetClip();
+    }
+  
+  /** Determine if the current clipping region is empty
+   * 
+   * @return true if nothing drawn with the current clipping region will be
+   *         visible.
+   */
+  boolean isClipEmpty() {
+    return Rectangle.area(m_clip)==0;
+    }
+  
+  /** Get the current clipping region
+   * 
+   * @return the effective clipping region in absolute co-ordinates.
+   */
+  IRectangle getClip() {
+    return m_clip;
+    }
+  
+  /** Prepare the clip for a drawing operation
+   * 
+   * Determines if an operation covering the given (inclusive, absolute)
+   * corners could be visible and sends the current clipping region to the
+   * driver if it has changed.
+   * 
+   * @return true if the operation should be performed, false if it lies
+   *         entirely outside the clipping region.
+   */
+  private boolean applyClip(int x1, int y1, int x2, int y2) {
+    if(x2<x1) {
+      int swap = x1;
+      x1 = x2;
+      x2 = swap;
+      }
+    if(y2<y1) {
+      int swap = y1;
+      y1 = y2;
+      y2 = swap;
+      }
+    if((x2<m_clip.x)||(x1>=(m_clip.x + m_clip.width)))
+      return false;
+    if((y2<m_clip.y)||(y1>=(m_clip.y + m_clip.height)))
+      return false;
+    // Update the driver if needed
+    if(m_clipDirty) {
+      getSurface().setClip(m_clip);
+      m_clipDirty = false;
+      }
+    return true;
+    }
+  
+  /** Get the surface to draw on
+   * 
+   * @return the layer being rendered or the display driver.
+   */
+  private ISurface getSurface() {
+    if(m_layer!=null)
+      return m_layer;
+    return m_driver;
+    }
+  
+  /** Get the cache of offscreen buffers
+   * 
+   * @return the LayerCache used for cached containers.
+   */
+  LayerCache getLayerCache() {
+    return m_layers;
+    }
+  
+  /** Start rendering into an offscreen layer
+   * 
+   * All drawing operations are sent to the layer until the matching call to
+   * endLayer(). The clip stack is saved and replaced with the area covered
+   * by the layer (as given by it's origin and size). Layers may be nested.
+   * 
+   * @param layer the FrameBuffer to draw into.
+   * @param origin the absolute location of the top left of the layer.
+   */
+  void beginLayer(FrameBuffer layer, IPoint origin) {
+    // Save the current state
+    m_saved.push(new LayerState(m_layer, m_clips, m_clipDepth, new Rectangle(m_clip)));
+    // Set up the new target
+    m_layer = layer;
+    m_layer.setOrigin(origin);
+    m_clips = new Rectangle[INITIAL_CLIP_DEPTH];
+    m_clipDepth = 0;
+    pushClip(new Rectangle(origin, layer));
+    }
+  
+  /** Finish rendering into an offscreen layer
+   * 
+   * Restores the drawing target and clip stack in effect before the
+   * matching call to beginLayer().
+   */
+  void endLayer() {
+    LayerState state = m_saved.pop();
+    m_layer = state.m_layer;
+    m_clips = state.m_clips;
+    m_clipDepth = state.m_depth;
+    m_clip = state.m_clip;
+    m_clipDirty = true;
+    }
+  
+  /** Save the display beneath a dialog
+   * 
+   * @param state the dialog to save the display for.
+   */
+  private void saveUnder(DialogState state) {
+    IRectangle area = state.m_dialog.getAbsolute();
+    state.m_area.x = area.getX();
+    state.m_area.y = area.getY();
+    state.m_area.width = area.getWidth();
+    state.m_area.height = area.getHeight();
+    if(Rectangle.area(area)==0) {
+      state.m_under = null;
+      return;
+      }
+    if((state.m_under==null)||(state.m_under.getWidth()!=area.getWidth())||(state.m_under.getHeight()!=area.getHeight()))
+      state.m_under = new FrameBuffer(area.getWidth(), area.getHeight());
+    if(!m_driver.readFrameBuffer(area, state.m_under))
+      state.m_under = null;
+    }
+  
+  /** Restore the display beneath a dialog that has been hidden
+   * 
+   * @param state the dialog being removed.
+   * 
+   * @return true if the display was restored, false if it was not saved or
+   *         the dialog has moved since it was saved.
+   */
+  private boolean restoreUnder(DialogState state) {
+    IRectangle area = state.m_dialog.getAbsolute();
+    if(state.m_under==null)
+      return false;
+    if((area.getX()!=state.m_area.x)||(area.getY()!=state.m_area.y)||(area.getWidth()!=state.m_area.width)||(area.getHeight()!=state.m_area.height))
+      return false;
+    pushClip(state.m_area);
+    beginPaint();
+    drawLayer(state.m_area, state.m_under);
+    endPaint();
+    popClip();
+    return true;
+    }
+  
+  /** Copy an offscreen layer to the current surface
+   * 
+   * @param point the absolute location of the top left corner of the layer.
+   * @param layer the FrameBuffer to copy.
+   */
+  void drawLayer(IPoint point, FrameBuffer layer) {
+    if(!applyClip(point.getX(), point.getY(), point.getX() + layer.getWidth() - 1, point.getY() + layer.getHeight() - 1))
+      return;
+    if(m_layer!=null)
+      m_layer.drawFrameBuffer(point, layer);
     else
-      m_offset = new Point(offset);
+      m_driver.drawFrameBuffer(point, layer);
     }
   
   /** Process an TouchEvent
@@ -273,15 +598,23 @@ public class Application extends Container {
    * @param event the TouchEvent to handle
    */
   void doTouchEvent(TouchEvent event) {
-    // Limit touch targets to the dialog if present.
+    // Limit touch targets to the top visible dialog if present.
     IWindow search = this;
-    if(m_dialog!=null) {
-      if(m_dialog.isVisible()) {
-        search = m_dialog;
-        m_target = null;
+    if(!m_dialogs.isEmpty()) {
+      for(DialogState state: m_dialogs) {
+        if(state.m_dialog.isVisible()) {
+          search = state.m_dialog;
+          break;
+          }
         }
-      else
-        m_dialog = null;
+      }
+    // Drop the current target if it is no longer available
+    if(m_target!=null) {
+      IWindow root = m_target;
+      while(root.getParent()!=null)
+        root = root.getParent();
+      if(root!=search)
+        m_target = null;
       }
     // A touch event can change the focus, handle that situation.
     if(event.getEventType()==TouchEvent.GFX_EVENT_TOUCH) {
@@ -291,10 +624,25 @@ public class Application extends Container {
       }
     // Now dispatch the touch event
     if(m_target!=null)
-      m_target.onTouchEvent(event.getEventType(), Point.offset(m_target, event));
+      m_target.onTouchEvent(event.getEventType(), Point.offset(m_target, event, m_where));
     else
       onTouchEvent(event.getEventType(), event);
     }
+
+  /** Stop sending touch events to a window that is being removed
+   * 
+   * @param window the window being removed. If it (or one of it's children)
+   *               is receiving touch events they are sent to the application
+   *               until the next touch.
+   */
+  void releaseTarget(Window window) {
+    for(IWindow target=m_target; target!=null; target=target.getParent()) {
+      if(target==window) {
+        m_target = null;
+        return;
+        }
+      }
+    }
   
   //-------------------------------------------------------------------------
   // Implementation of ISurface
@@ -307,7 +655,7 @@ public class Application extends Container {
    */
   @Override
   public void beginPaint() {
-    m_driver.beginPaint();
+    getSurface().beginPaint();
     }
   
   /** End a paint operation.
@@ -316,16 +664,31 @@ public class Application extends Container {
    */
   @Override
   public void endPaint() {
-    m_driver.endPaint();
+    getSurface().endPaint();
     }
 
   /** Set the clipping region for future operations
    * 
-   * @param rect the Rectangle describing the clipping region.
+   * The region is relative to the current painting offset and is limited
+   * to the clipping region set up by the framework for the window being
+   * painted. The region remains in effect until the window has finished
+   * painting.
+   * 
+   * @param rect the Rectangle describing the clipping region (null to
+   *             remove any additional clipping).
    */
   @Override
   public void setClip(IRectangle rect) {
-    m_driver.setClip(rect);
+    if(rect==null)
+      resetClip();
+    else {
+      m_clip.x = rect.getX() + m_offsetX;
+      m_clip.y = rect.getY() + m_offsetY;
+      m_clip.width = rect.getWidth();
+      m_clip.height = rect.getHeight();
+      Rectangle.intersection(getClipBase(), m_clip, m_clip);
+      m_clipDirty = true;
+      }
     }
 
   /** Display a single pixel.
@@ -335,8 +698,7 @@ public class Application extends Container {
    */
   @Override
   public void putPixel(IPoint point, Color color) {
-    point = point.translate(m_offset);
-    m_driver.putPixel(point, color);
+    putPixel(point.getX(), point.getY(), color.getNativeFormat());
     }
 
   /** Fill a rectangle with a specific color.
@@ -346,8 +708,7 @@ public class Application extends Container {
    */
   @Override
   public void fillRect(IRectangle rect, Color color) {
-    rect = (IRectangle)rect.translate(m_offset);
-    m_driver.fillRect(rect, color);
+    fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
     }
   
   /** Draw a line from one point to another 
@@ -358,9 +719,7 @@ public class Application extends Container {
    */
   @Override
   public void drawLine(IPoint start, IPoint end, Color color) {
-    start = start.translate(m_offset);
-    end = end.translate(m_offset);
-    m_driver.drawLine(start, end, color);
+    drawLine(start.getX(), start.getY(), end.getX(), end.getY(), color.getNativeFormat());
     }
   
   /** Draw a box around a rectangle.
@@ -370,8 +729,7 @@ public class Application extends Container {
    */
   @Override
   public void drawBox(IRectangle rect, Color color) {
-    rect = (IRectangle)rect.translate(m_offset);
-    m_driver.drawBox(rect, color);
+    drawBox(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
     }
 
   /** Draw an Image to the screen.
@@ -385,8 +743,7 @@ public class Application extends Container {
    */
   @Override
   public void drawImage(IPoint point, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
-    point = point.translate(m_offset);
-    m_driver.drawImage(point, image, source, mask, color, palette);
+    drawImage(point.getX(), point.getY(), image, source, mask, color, palette);
     }
 
   /** Draw a single character using the given font.
@@ -398,8 +755,7 @@ public class Application extends Container {
    */
   @Override
   public void drawChar(Font font, IPoint point, Color color, char ch) {
-    point = point.translate(m_offset);
-    m_driver.drawChar(font, point, color, ch);
+    drawChar(font, point.getX(), point.getY(), color, ch);
     }
 
   /** Draw a string using the given font.
@@ -411,8 +767,145 @@ public class Application extends Container {
    */
   @Override
   public void drawString(Font font, IPoint point, Color color, String string) {
-    point = point.translate(m_offset);
-    m_driver.drawString(font, point, color, string);
+    drawString(font, point.getX(), point.getY(), color, string);
+    }
+  
+  //-------------------------------------------------------------------------
+  // Primitive versions of the drawing operations
+  //
+  // All drawing ends up here. Co-ordinates are translated by the current
+  // painting offset and culled against the clipping region without creating
+  // any new objects.
+  //-------------------------------------------------------------------------
+  
+  /** Display a single pixel.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  @Override
+  public void putPixel(int x, int y, int color) {
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    if(applyClip(x, y, x, y))
+      getSurface().putPixel(x, y, color);
+    }
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to fill the rectangle with.
+   */
+  @Override
+  public void fillRect(int x, int y, int width, int height, int color) {
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    if(applyClip(x, y, x + width - 1, y + height - 1))
+      getSurface().fillRect(x, y, width, height, color);
+    }
+  
+  /** Draw a line from one point to another 
+   * 
+   * @param x1 the X co-ordinate of the starting point.
+   * @param y1 the Y co-ordinate of the starting point.
+   * @param x2 the X co-ordinate of the ending point.
+   * @param y2 the Y co-ordinate of the ending point.
+   * @param color the native color to draw the line in.
+   */
+  @Override
+  public void drawLine(int x1, int y1, int x2, int y2, int color) {
+    x1 = x1 + m_offsetX;
+    y1 = y1 + m_offsetY;
+    x2 = x2 + m_offsetX;
+    y2 = y2 + m_offsetY;
+    // The driver reflects lines that slope upwards vertically so we can
+    // only cull them horizontally.
+    if((x1!=x2)&&(y1!=y2)&&((x1<x2)!=(y1<y2))) {
+      if(!applyClip(x1, m_clip.y, x2, m_clip.y))
+        return;
+      }
+    else if(!applyClip(x1, y1, x2, y2))
+      return;
+    getSurface().drawLine(x1, y1, x2, y2, color);
+    }
+  
+  /** Draw a box around a rectangle.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to draw the box in.
+   */
+  @Override
+  public void drawBox(int x, int y, int width, int height, int color) {
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    if(applyClip(x, y, x + width - 1, y + height - 1))
+      getSurface().drawBox(x, y, width, height, color);
+    }
+
+  /** Draw an Image to the screen.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  @Override
+  public void drawImage(int x, int y, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
+    if(image==null)
+      return;
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    // The image can never cover more than it's own size
+    if(applyClip(x, y, x + image.getWidth() - 1, y + image.getHeight() - 1))
+      getSurface().drawImage(x, y, image, source, mask, color, palette);
+    }
+
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the character at.
+   * @param y the Y co-ordinate to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  @Override
+  public void drawChar(Font font, int x, int y, Color color, char ch) {
+    if(font==null)
+      return;
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    if(applyClip(x, y, x + font.getWidth() - 1, y + font.getHeight() - 1))
+      getSurface().drawChar(font, x, y, color, ch);
+    }
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  @Override
+  public void drawString(Font font, int x, int y, Color color, String string) {
+    if((font==null)||(string==null))
+      return;
+    x = x + m_offsetX;
+    y = y + m_offsetY;
+    // Only the start of the string and the height are checked, measuring the
+    // string would cost more than drawing it.
+    if(applyClip(x, y, Math.max(x, m_clip.x + m_clip.width - 1), y + font.getHeight() - 1))
+      getSurface().drawString(font, x, y, color, string);
     }
   
   //-------------------------------------------------------------------------
@@ -420,24 +913,36 @@ public class Application extends Container {
   //-------------------------------------------------------------------------
   
   /** Show a dialog
+   * 
+   * Dialogs may be stacked, only the most recent dialog is painted and
+   * receives touch events until it is hidden. The display beneath the
+   * dialog is saved when it is shown and put back when it is hidden so
+   * only windows that changed while the dialog was visible are repainted.
    * 
    * @param dialog the modal dialog to display.
+   * 
+   * @return true if the dialog is shown, false if it is already being
+   *         shown.
    */
   public boolean showDialog(Dialog dialog) {
-    // Dialogs cannot be stacked
-    if(m_dialog!=null)
-      return false;
-    // Set the parameter as the current dialog
-    m_dialog = dialog;
-    if(m_dialog!=null) {
-      m_dialog.setVisible(true);
-      setDirty(true);
+    if(dialog==null)
+      return true;
+    // A dialog can only be on the stack once
+    for(DialogState state: m_dialogs) {
+      if(state.m_dialog==dialog)
+        return false;
       }
+    // Save the display beneath it and make it the current dialog
+    DialogState state = new DialogState(dialog);
+    saveUnder(state);
+    m_dialogs.push(state);
+    dialog.setVisible(true);
+    dialog.setDirty(true);
     return true;
     }
   
   /** Get the system icons
-   *
+   * 
    * @return the Icon asset containing the system icons
    */
   public Icon getIcons() {
@@ -457,7 +962,7 @@ public class Application extends Container {
     drawImage(
       position, 
       m_icons,
-      new Rectangle(icon * SYSTEM_ICON_SIZE, 0, SYSTEM_ICON_SIZE, SYSTEM_ICON_SIZE),
+      m_iconAreas[icon],
       null,
       color,
       null
@@ -481,7 +986,7 @@ public class Application extends Container {
     }
   
   /** Get a system color
-   *
+   * 
    * @param index the index of the color to fetch.
    * 
    * @return the color from the system palette that matches the given index.
@@ -489,9 +994,150 @@ public class Application extends Container {
   public Color getSystemColor(int index) {
     return m_palette.getColor(index % Palette.PALETTE_SIZE);
     }
+
+  /** Set the threshold used to merge damaged regions
+   * 
+   * When only some windows need repainting the areas they cover are merged
+   * into a small number of regions. Two areas are merged if doing so would
+   * repaint no more than the given number of pixels that do not need it.
+   * 
+   * @param threshold the maximum number of additional pixels allowed.
+   */
+  public void setDamageThreshold(int threshold) {
+    m_damage.setThreshold(threshold);
+    }
   
+  /** Get the threshold used to merge damaged regions
+   * 
+   * @return the maximum number of additional pixels allowed when merging.
+   */
+  public int getDamageThreshold() {
+    return m_damage.getThreshold();
+    }
+  
+  /** Get the area repainted by the last partial update
+   * 
+   * @return the number of pixels covered by the damaged regions the last
+   *         time only part of the display was repainted.
+   */
+  public int getDamageArea() {
+    return m_damageArea;
+    }
+
+  /** Set the memory budget for cached containers
+   * 
+   * Containers marked as cached keep a copy of their contents in memory.
+   * When the total memory used would exceed the budget the least recently
+   * used copies are discarded.
+   * 
+   * @param budget the maximum number of bytes to use.
+   */
+  public void setLayerBudget(int budget) {
+    m_layers.setBudget(budget);
+    }
+  
+  /** Get the memory budget for cached containers
+   * 
+   * @return the maximum number of bytes used for cached containers.
+   */
+  public int getLayerBudget() {
+    return m_layers.getBudget();
+    }
+
+  /** Set the memory budget for pre-rendered strings
+   * 
+   * The native driver keeps a copy of recently drawn strings so they can
+   * be drawn again with a single operation. A budget of 0 disables this.
+   * 
+   * @param budget the maximum number of bytes to use.
+   */
+  public void setTextCacheBudget(int budget) {
+    m_driver.getTextCache().setBudget(budget);
+    }
+  
+  /** Get the memory budget for pre-rendered strings
+   * 
+   * @return the maximum number of bytes used for pre-rendered strings.
+   */
+  public int getTextCacheBudget() {
+    return m_driver.getTextCache().getBudget();
+    }
+
+  /** Set the frame interval
+   * 
+   * The display is repainted at most once per frame interval. Changes made
+   * while waiting for the next frame are painted together. The interval is
+   * also the time budget for each frame, frames that take longer than this
+   * are counted as dropped in the frame statistics.
+   * 
+   * @param interval the minimum time between repaints (in milliseconds). A
+   *                 value of 0 repaints as soon as anything changes.
+   */
+  public void setFrameInterval(long interval) {
+    m_frameInterval = Math.max(0, interval) * NANOS_PER_MILLI;
+    wakeup();
+    }
+  
+  /** Get the frame interval
+   * 
+   * @return the minimum time between repaints (in milliseconds).
+   */
+  public long getFrameInterval() {
+    return m_frameInterval / NANOS_PER_MILLI;
+    }
+  
+  /** Get the frame statistics
+   * 
+   * @return the FrameStats instance recording the time taken by each frame.
+   */
+  public FrameStats getFrameStats() {
+    return m_stats;
+    }
+
+  /** Set the executor used for background activities
+   * 
+   * Dialog.start() uses this to run activities off the event loop thread.
+   * Any Executor may be used (on newer Java versions an executor that
+   * creates a virtual thread for each task is a good choice).
+   * 
+   * @param executor the Executor to use or null to use the default (a pool
+   *                 of daemon threads).
+   */
+  public synchronized void setExecutor(Executor executor) {
+    m_executor = executor;
+    }
+
+  /** Get the executor used for background activities
+   * 
+   * @return the Executor used to run background activities.
+   */
+  public synchronized Executor getExecutor() {
+    if(m_executor==null) {
+      m_executor = Executors.newCachedThreadPool(
+        new ThreadFactory() {
+          public Thread newThread(Runnable task) {
+            // Background activities must not keep the process alive
+            Thread thread = new Thread(task, "quickui-activity");
+            thread.setDaemon(true);
+            return thread;
+            }
+          }
+        );
+      }
+    return m_executor;
+    }
+
+  /** Get the software display
+   * 
+   * @return the FrameBuffer being used as the display or null if the
+   *         native driver is being used.
+   */
+  public FrameBuffer getFrameBuffer() {
+    return m_driver.getFrameBuffer();
+    }
+
   /** Called to initialise the application
-   *
+   * 
    * This method is called after the window management functions have been
    * called but before the event loop starts. Application implementations
    * should use this to set up their state, create all required windows,
@@ -501,14 +1147,113 @@ public class Application extends Container {
     // Nothing to do in this implementation
     }
   
+  /** Wake up the event loop
+   * 
+   * If the event loop is waiting for something to happen it will check for
+   * events, timers and windows that need to be repainted immediately. This
+   * method may be called from any thread.
+   */
+  public void wakeup() {
+    if((m_driver!=null)&&(Thread.currentThread()!=m_thread))
+      m_driver.wakeup();
+    }
+  
+  /** Stop the event loop
+   * 
+   * The call to run() returns once the current pass around the loop is
+   * complete. This method may be called from any thread.
+   */
+  public void stop() {
+    m_running = false;
+    wakeup();
+    }
+  
+  /** Run a task on the event loop thread
+   * 
+   * The framework is single threaded, windows and controls must only be
+   * changed by the thread running the event loop. Other threads can use
+   * this method to have the change made on their behalf. Tasks are run in
+   * the order they were posted, before windows are updated. This method
+   * may be called from any thread and does not wait for the task to run.
+   * 
+   * @param task the task to run.
+   */
+  public void post(Runnable task) {
+    if(task==null)
+      return;
+    m_tasks.add(task);
+    wakeup();
+    }
+
+  /** Run a task on the event loop thread and wait for it to complete
+   * 
+   * If this is called from the event loop thread the task is run
+   * immediately.
+   * 
+   * @param task the task to run.
+   * 
+   * @throws InterruptedException if the calling thread is interrupted
+   *                              while waiting for the task.
+   */
+  public void invokeAndWait(Runnable task) throws InterruptedException {
+    if(task==null)
+      return;
+    if(Thread.currentThread()==m_thread) {
+      task.run();
+      return;
+      }
+    FutureTask<Object> future = new FutureTask<Object>(task, null);
+    post(future);
+    try {
+      future.get();
+      }
+    catch(ExecutionException ex) {
+      // Pass on the failure to the caller
+      Throwable cause = ex.getCause();
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if(cause instanceof Error)
+        throw (Error)cause;
+      throw new RuntimeException(cause);
+      }
+    }
+
+  /** Run tasks posted from other threads
+   * 
+   * At most MAX_TASKS are run at once so a busy producer cannot hold up the
+   * rest of the loop, any remaining tasks are run the next time around.
+   */
+  private void runTasks() {
+    for(int count=0; count<MAX_TASKS; count++) {
+      Runnable task = m_tasks.poll();
+      if(task==null)
+        return;
+      task.run();
+      }
+    }
+  
   /** Run the application
    * 
-   *  This method enters an endless loop that runs the application and sends
-   *  updates to the physical display.
+   *  This method enters a loop that runs the application and sends updates
+   *  to the physical display until stop() is called. When there is nothing
+   *  to do the loop waits until an event arrives, the next timer is due, a
+   *  window is marked as dirty, a task is posted or wakeup() is called.
+   *  Posted tasks and Window.onUpdate() are run each time the loop wakes up.
+   *  
+   *  Repaints are limited to one per frame interval (see setFrameInterval())
+   *  and the time spent in each phase of the loop is recorded in the frame
+   *  statistics.
+   *  
+   *  When the loop ends the native copies of all assets are released.
    */
   public final void run() {
+    m_thread = Thread.currentThread();
+    m_running = true;
     onInitialise();
-    while(true) {
+    long nextFrame = System.nanoTime();
+    boolean deferred = false;
+    while(m_running) {
+      long start = System.nanoTime();
       // Process pending events
       m_driver.grabEvents();
       TouchEvent event = m_driver.nextTouchEvent();
@@ -516,13 +1261,47 @@ public class Application extends Container {
         doTouchEvent(event);
         event = m_driver.nextTouchEvent();
         }
+      long now = System.nanoTime();
+      m_stats.addPhase(FrameStats.PHASE_EVENTS, now - start);
       // Process timers
+      start = now;
       SimpleTimer.update();
-      // Do any updates
+      now = System.nanoTime();
+      m_stats.addPhase(FrameStats.PHASE_TIMERS, now - start);
+      // Run posted tasks and do any updates
+      start = now;
+      runTasks();
       doUpdate();
-      // Repaint what is needed.
-      doRepaint(false);
+      now = System.nanoTime();
+      m_stats.addPhase(FrameStats.PHASE_UPDATE, now - start);
+      // Repaint what is needed (once the frame interval has passed)
+      if(!needsRepaint())
+        m_stats.clearPhases();
+      else if((now - nextFrame)<0)
+        deferred = true;
+      else {
+        // Count a repaint that had to wait as a single skipped frame
+        if(deferred)
+          m_stats.skipFrame();
+        deferred = false;
+        start = now;
+        doRepaint(false);
+        now = System.nanoTime();
+        m_stats.addPhase(FrameStats.PHASE_REPAINT, now - start);
+        m_stats.endFrame(m_frameInterval);
+        nextFrame = start + m_frameInterval;
+        }
+      // Wait for something else to do
+      long timeout = (m_tasks.isEmpty())?MAX_WAIT:0;
+      long deadline = SimpleTimer.nextDeadline();
+      if(needsRepaint()&&((deadline==Long.MAX_VALUE)||((nextFrame - deadline)<0)))
+        deadline = nextFrame;
+      if(deadline!=Long.MAX_VALUE)
+        timeout = Math.min(timeout, Math.max(0, (deadline - System.nanoTime() + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI));
+      m_driver.waitEvents(timeout);
       }
+    // Release native resources
+    m_driver.releaseAssets();
     }
 
   }
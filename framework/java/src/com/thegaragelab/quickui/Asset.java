@@ -9,6 +9,7 @@ package com.thegaragelab.quickui;
 
 //--- Imports
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 /** Represents a single asset.
@@ -20,8 +21,21 @@ import java.util.*;
  * As well as providing the base for the asset class heirarchy this class
  * provides a number of static methods that allow the application (and
  * framework) to load assets easily.
+ * 
+ * The data for each asset is held in a single direct (and aligned)
+ * ByteBuffer, available through getBuffer(). The native driver uses this in
+ * place without the JVM having to copy the data when the asset is
+ * registered. The older getData() method returns a copy of the data.
+ * 
+ * When the native driver is in use each asset is registered with it the
+ * first time it is drawn and is then referred to by an integer handle. The
+ * handle is released when the asset is no longer reachable or when
+ * release() is called.
  */
 public class Asset {
+  //--- Handle used for assets that are not registered with the native driver
+  static final int NO_HANDLE = -1;
+  
   //--- Asset types
   public static final int ICON    = 0; //! Represents an icon
   public static final int IMAGE   = 1; //! Represents an image
@@ -44,11 +58,17 @@ public class Asset {
   private static final int MAX_ASSET_SIZE = 34 * 1024;       //! Maximum size of an asset
   private static byte[] m_buffer = new byte[MAX_ASSET_SIZE]; //! Buffer for loading assets
   
+  //--- Direct buffer alignment
+  private static final int DIRECT_ALIGNMENT = 8; //! Alignment for direct buffers (in bytes)
+  
   //--- Class variables
   private static Map<String, Asset> m_assets; //! All loaded assets
   
   //--- Instance variables
-  protected byte[] m_data; //! The raw data for this asset
+  @Deprecated
+  protected byte[]     m_data;   //! Data set by older subclasses (moved into m_direct when first needed)
+  private   ByteBuffer m_direct; //! The raw data for this asset (direct and read only)
+  private Driver.Registration m_registration; //! Registration with the native driver (null if never registered)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -58,6 +78,7 @@ public class Asset {
    * 
    */
   protected Asset() {
+    // Nothing to do in this implementation
     }
   
   //-------------------------------------------------------------------------
@@ -118,6 +139,33 @@ public class Asset {
     m_assets.put(name, asset);
     }
   
+  /** Set the data for this asset
+   * 
+   * The data is copied into a read only, direct ByteBuffer that is aligned
+   * to DIRECT_ALIGNMENT bytes. This is the only copy of the data kept by
+   * the asset.
+   * 
+   * @param data the array containing the data.
+   * @param offset the offset to the start of the data in the array.
+   * @param size the number of bytes of data.
+   */
+  void setData(byte[] data, int offset, int size) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size + DIRECT_ALIGNMENT - 1).alignedSlice(DIRECT_ALIGNMENT);
+    buffer.limit(size);
+    buffer.put(data, offset, size);
+    buffer.flip();
+    m_direct = buffer.asReadOnlyBuffer();
+    }
+  
+  /** Share the data of another asset
+   * 
+   * @param buffer the buffer holding the data for this asset (from index 0
+   *               to the limit) or null if the asset is not valid.
+   */
+  void setBuffer(ByteBuffer buffer) {
+    m_direct = buffer;
+    }
+  
   //-------------------------------------------------------------------------
   // Factory functions
   //-------------------------------------------------------------------------
@@ -140,7 +188,7 @@ public class Asset {
       return null;
     // Now create the instance
     icon = new Icon(m_buffer, 0, size);
-    if((icon.getData()==null)||(icon.getBitsPerPixel()!=1))
+    if((icon.getBuffer()==null)||(icon.getBitsPerPixel()!=1))
       return null;
     // And register it in the cache of assets
     addAsset(name, icon);
@@ -165,7 +213,7 @@ public class Asset {
       return null;
     // Now create the instance
     image = new Image(m_buffer, 0, size);
-    if(image.getData()==null)
+    if(image.getBuffer()==null)
       return null;
     // And register it in the cache of assets
     addAsset(name, image);
@@ -190,7 +238,7 @@ public class Asset {
       return null;
     // Now create the instance
     palette = new Palette(m_buffer, 0, size);
-    if(palette.getData()==null)
+    if(palette.getBuffer()==null)
       return null;
     // And register it in the cache of assets
     addAsset(name, palette);
@@ -215,7 +263,7 @@ public class Asset {
       return null;
     // Now create the instance
     font = new Font(m_buffer, 0, size);
-    if(font.getData()==null)
+    if(font.getBuffer()==null)
       return null;
     // And register it in the cache of assets
     addAsset(name, font);
@@ -228,12 +276,80 @@ public class Asset {
   
   /** Get the raw data for this asset
    * 
-   * @return a byte array containing the data for this asset. You must never
-   *         modify the contents of this array. If the asset failed to load
-   *         the return value will be null.
+   * @return a byte array containing a copy of the data for this asset. If
+   *         the asset failed to load the return value will be null.
+   * 
+   * @deprecated a new array is created for each call, use getBuffer() to
+   *             access the data without copying it.
    */
+  @Deprecated
   public byte[] getData() {
-    return m_data;
+    ByteBuffer buffer = getBuffer();
+    if(buffer==null)
+      return null;
+    byte[] data = new byte[buffer.limit()];
+    buffer.duplicate().position(0).get(data);
+    return data;
+    }
+  
+  /** Get the raw data for this asset
+   * 
+   * @return a read only, direct ByteBuffer containing the data for this
+   *         asset. The data starts at index 0 and the limit of the buffer
+   *         is the size of the data. Use the absolute get() methods to
+   *         read it. If the asset failed to load the return value will be
+   *         null.
+   */
+  @SuppressWarnings("deprecation")
+  public ByteBuffer getBuffer() {
+    // Move data provided by a subclass into the buffer
+    if((m_direct==null)&&(m_data!=null)) {
+      setData(m_data, 0, m_data.length);
+      m_data = null;
+      }
+    return m_direct;
+    }
+  
+  /** Get the native handle for this asset
+   * 
+   * @return the handle assigned when the asset was registered with the
+   *         native driver or NO_HANDLE if it is not registered.
+   */
+  int getHandle() {
+    return (m_registration==null)?NO_HANDLE:m_registration.getHandle();
+    }
+  
+  /** Get the registration with the native driver
+   * 
+   * @return the current registration or null if the asset has never been
+   *         registered.
+   */
+  Driver.Registration getRegistration() {
+    return m_registration;
+    }
+  
+  /** Set the registration with the native driver
+   * 
+   * @param registration the registration created by the driver.
+   */
+  void setRegistration(Driver.Registration registration) {
+    m_registration = registration;
+    }
+  
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+  
+  /** Release the native resources used by this asset
+   * 
+   * This happens automatically once the asset is no longer reachable, call
+   * this to release them sooner. The asset may still be used, it will be
+   * registered with the native driver again if it is drawn. This must be
+   * called from the thread running the event loop.
+   */
+  public void release() {
+    if(getHandle()!=NO_HANDLE)
+      Driver.getInstance().releaseAsset(this);
     }
   
   }
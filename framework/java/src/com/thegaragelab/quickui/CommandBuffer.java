@@ -0,0 +1,299 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.util.*;
+
+/** A list of drawing commands waiting to be sent to the native driver.
+ * 
+ * While a paint operation is in progress the Driver records each drawing
+ * operation here rather than calling the native library directly. When the
+ * outermost paint operation completes the whole list is passed to the
+ * native driver in a single call.
+ * 
+ * Commands are stored as a flat array of integers - the command code
+ * followed by a fixed number of arguments. Images, fonts and palettes are
+ * referred to by the handle assigned when they were registered with the
+ * native driver. Strings are stored in a separate table and referenced by
+ * index. A handle (or index) of NO_ASSET indicates that the (optional)
+ * asset is not present.
+ * 
+ * The command codes and layouts must match the definitions in the JNI
+ * library (see jnidriver.c).
+ */
+class CommandBuffer {
+  //--- Command codes
+  static final int CMD_BEGIN_PAINT = 0; //! No arguments
+  static final int CMD_END_PAINT   = 1; //! No arguments
+  static final int CMD_SET_CLIP    = 2; //! x1, y1, x2, y2
+  static final int CMD_PUT_PIXEL   = 3; //! x, y, color
+  static final int CMD_FILL_REGION = 4; //! x1, y1, x2, y2, color
+  static final int CMD_DRAW_LINE   = 5; //! x1, y1, x2, y2, color
+  static final int CMD_DRAW_BOX    = 6; //! x1, y1, x2, y2, color
+  static final int CMD_DRAW_IMAGE  = 7; //! x, y, image, sx, sy, w, h, mask, color, palette
+  static final int CMD_DRAW_CHAR   = 8; //! font, x, y, color, ch
+  static final int CMD_DRAW_STRING = 9; //! font, x, y, color, string
+
+  //--- Handle (or index) used for optional assets that are not present
+  static final int NO_ASSET = Asset.NO_HANDLE;
+
+  //--- Internal constants
+  private static final int INITIAL_COMMANDS = 1024; //! Initial size of the command list
+  private static final int INITIAL_ASSETS   = 32;   //! Initial size of the string table
+
+  //--- Instance variables
+  private int[]                            m_commands; //! The encoded commands
+  private int                              m_length;   //! Number of entries used in the command list
+  private Object[]                         m_assets;   //! Strings referenced by the commands
+  private int                              m_count;    //! Number of entries used in the string table
+  private IdentityHashMap<Object, Integer> m_index;    //! Map of string to index in the table
+  private byte[][]                         m_strings;  //! Buffers reused by addString() (indexed by table entry)
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Default constructor
+   */
+  CommandBuffer() {
+    m_commands = new int[INITIAL_COMMANDS];
+    m_assets = new Object[INITIAL_ASSETS];
+    m_index = new IdentityHashMap<Object, Integer>();
+    m_strings = new byte[INITIAL_ASSETS][];
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Make sure there is room for the given number of entries
+   * 
+   * @param size the number of additional entries required.
+   */
+  private void reserve(int size) {
+    if((m_length + size)<=m_commands.length)
+      return;
+    m_commands = Arrays.copyOf(m_commands, Math.max(m_commands.length * 2, m_length + size));
+    }
+
+  /** Add a string to the string table
+   * 
+   * Each string is only stored once regardless of how many commands refer
+   * to it.
+   * 
+   * @param asset the NUL terminated string to add (may be null).
+   * 
+   * @return the index of the string in the table or NO_ASSET if the string
+   *         was null.
+   */
+  private int addAsset(byte[] asset) {
+    if(asset==null)
+      return NO_ASSET;
+    Integer index = m_index.get(asset);
+    if(index!=null)
+      return index.intValue();
+    // Add a new entry
+    if(m_count==m_assets.length)
+      m_assets = Arrays.copyOf(m_assets, m_assets.length * 2);
+    m_assets[m_count] = asset;
+    m_index.put(asset, m_count);
+    return m_count++;
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Determine if the buffer is empty
+   * 
+   * @return true if no commands have been recorded.
+   */
+  boolean isEmpty() {
+    return m_length==0;
+    }
+
+  /** Get the encoded commands
+   * 
+   * @return the array of encoded commands. Only the first getLength()
+   *         entries are valid.
+   */
+  int[] getCommands() {
+    return m_commands;
+    }
+
+  /** Get the length of the encoded commands
+   * 
+   * @return the number of valid entries in the array returned by
+   *         getCommands().
+   */
+  int getLength() {
+    return m_length;
+    }
+
+  /** Get the string table
+   * 
+   * @return the array of strings referenced by the commands.
+   */
+  Object[] getAssets() {
+    return m_assets;
+    }
+
+  /** Clear the buffer
+   * 
+   * Removes all recorded commands and releases any references to strings.
+   */
+  void clear() {
+    m_length = 0;
+    Arrays.fill(m_assets, 0, m_count, null);
+    m_count = 0;
+    m_index.clear();
+    }
+
+  /** Record a command with no arguments
+   * 
+   * @param command the command code.
+   */
+  void add(int command) {
+    reserve(1);
+    m_commands[m_length++] = command;
+    }
+
+  /** Record a command with three arguments
+   * 
+   * Used for CMD_PUT_PIXEL.
+   * 
+   * @param command the command code.
+   * @param a the first argument (the X co-ordinate for CMD_PUT_PIXEL).
+   * @param b the second argument (the Y co-ordinate for CMD_PUT_PIXEL).
+   * @param c the third argument (the native color for CMD_PUT_PIXEL).
+   */
+  void add(int command, int a, int b, int c) {
+    reserve(4);
+    m_commands[m_length++] = command;
+    m_commands[m_length++] = a;
+    m_commands[m_length++] = b;
+    m_commands[m_length++] = c;
+    }
+
+  /** Record a command with four arguments
+   * 
+   * Used for CMD_SET_CLIP.
+   * 
+   * @param command the command code.
+   * @param a the first argument (the left edge of the clip area).
+   * @param b the second argument (the top edge of the clip area).
+   * @param c the third argument (the right edge of the clip area).
+   * @param d the fourth argument (the bottom edge of the clip area).
+   */
+  void add(int command, int a, int b, int c, int d) {
+    reserve(5);
+    m_commands[m_length++] = command;
+    m_commands[m_length++] = a;
+    m_commands[m_length++] = b;
+    m_commands[m_length++] = c;
+    m_commands[m_length++] = d;
+    }
+
+  /** Record a command with five arguments
+   * 
+   * Used for CMD_FILL_REGION, CMD_DRAW_LINE and CMD_DRAW_BOX. The end
+   * points (or corners) are inclusive.
+   * 
+   * @param command the command code.
+   * @param a the first argument (the X co-ordinate of the first point).
+   * @param b the second argument (the Y co-ordinate of the first point).
+   * @param c the third argument (the X co-ordinate of the second point).
+   * @param d the fourth argument (the Y co-ordinate of the second point).
+   * @param e the fifth argument (the native color to draw with).
+   */
+  void add(int command, int a, int b, int c, int d, int e) {
+    reserve(6);
+    m_commands[m_length++] = command;
+    m_commands[m_length++] = a;
+    m_commands[m_length++] = b;
+    m_commands[m_length++] = c;
+    m_commands[m_length++] = d;
+    m_commands[m_length++] = e;
+    }
+
+  /** Record an image drawing command
+   * 
+   * @param x the X co-ordinate to draw the image at.
+   * @param y the Y co-ordinate to draw the image at.
+   * @param image the handle of the image.
+   * @param sx the X co-ordinate of the source area.
+   * @param sy the Y co-ordinate of the source area.
+   * @param w the width of the source area.
+   * @param h the height of the source area.
+   * @param mask the handle of the mask (or NO_ASSET).
+   * @param color the native color to use for icons.
+   * @param palette the handle of the palette (or NO_ASSET).
+   */
+  void addImage(int x, int y, int image, int sx, int sy, int w, int h, int mask, int color, int palette) {
+    reserve(11);
+    m_commands[m_length++] = CMD_DRAW_IMAGE;
+    m_commands[m_length++] = x;
+    m_commands[m_length++] = y;
+    m_commands[m_length++] = image;
+    m_commands[m_length++] = sx;
+    m_commands[m_length++] = sy;
+    m_commands[m_length++] = w;
+    m_commands[m_length++] = h;
+    m_commands[m_length++] = mask;
+    m_commands[m_length++] = color;
+    m_commands[m_length++] = palette;
+    }
+
+  /** Record a text drawing command
+   * 
+   * @param command the command code (CMD_DRAW_CHAR or CMD_DRAW_STRING).
+   * @param font the handle of the font.
+   * @param x the X co-ordinate to draw the text at.
+   * @param y the Y co-ordinate to draw the text at.
+   * @param color the native color to draw the text in.
+   * @param ch the character to draw (for CMD_DRAW_CHAR).
+   * @param string the NUL terminated string to draw (for CMD_DRAW_STRING).
+   */
+  void addText(int command, int font, int x, int y, int color, int ch, byte[] string) {
+    reserve(6);
+    m_commands[m_length++] = command;
+    m_commands[m_length++] = font;
+    m_commands[m_length++] = x;
+    m_commands[m_length++] = y;
+    m_commands[m_length++] = color;
+    m_commands[m_length++] = (command==CMD_DRAW_STRING)?addAsset(string):ch;
+    }
+
+  /** Record a string drawing command
+   * 
+   * The string is converted to NUL terminated ASCII in a buffer owned by
+   * the command list. The buffers are kept when the list is cleared so
+   * recording the same strings each frame does not allocate.
+   * 
+   * @param font the handle of the font.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
+   * @param color the native color to draw the string in.
+   * @param string the string to draw.
+   */
+  void addString(int font, int x, int y, int color, String string) {
+    // Convert the string into the next entry in the string table
+    if(m_count==m_assets.length)
+      m_assets = Arrays.copyOf(m_assets, m_assets.length * 2);
+    if(m_count==m_strings.length)
+      m_strings = Arrays.copyOf(m_strings, m_assets.length);
+    m_strings[m_count] = Font.toASCII(string, m_strings[m_count]);
+    m_assets[m_count] = m_strings[m_count];
+    // Add the command
+    reserve(6);
+    m_commands[m_length++] = CMD_DRAW_STRING;
+    m_commands[m_length++] = font;
+    m_commands[m_length++] = x;
+    m_commands[m_length++] = y;
+    m_commands[m_length++] = color;
+    m_commands[m_length++] = m_count++;
+    }
+
+  }
@@ -11,11 +11,22 @@ package com.thegaragelab.quickui;
 import java.util.*;
 
 /** A container is a special type of window that can have child windows.
- *
+ * 
+ * Containers with many children keep a WindowGrid so the window at a given
+ * location can be found without checking every child.
  */
 public class Container extends Window {
+  //--- Internal constants
+  private static final int GRID_THRESHOLD = 8; //! Number of children before a grid is used for searches
+
   //--- Instance variables
-  private List<Window> m_children; //! Child windows
+  private List<Window> m_children;   //! Child windows
+  private boolean      m_layerValid; //! True if the cached copy is up to date
+  private List<Window> m_dirty;      //! Dirty windows found during a repaint (reused)
+  private Rectangle    m_visible;    //! Working area for pushVisibleClip() (reused)
+  private WindowGrid   m_grid;       //! Spatial index of the children (null if not built)
+  private int          m_nextOrder;  //! Order to assign to the next child added
+  private DamageTracker m_exposed;   //! Areas uncovered by moving child windows (null if none yet)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -73,14 +84,34 @@ public class Container extends Window {
    */
   @Override
   public IWindow getWindowByPoint(IPoint point) {
-    if(!(getAbsolute().contains(point)&&isVisible()))
+    // Convert to the co-ordinates used by our parent
+    IRectangle absolute = getAbsolute();
+    return hitTest(point.getX() - absolute.getX() + getX(), point.getY() - absolute.getY() + getY());
+    }
+
+  /** Find the window at a location
+   * 
+   * @param x the X co-ordinate (relative to the parent).
+   * @param y the Y co-ordinate (relative to the parent).
+   * 
+   * @return the smallest visible window that contains the point or null if
+   *         the point is outside this container.
+   */
+  @Override
+  Window hitTest(int x, int y) {
+    if(super.hitTest(x, y)==null)
       return null;
     // Do we have children ?
     if((m_children==null)||(m_children.size()==0))
       return this;
-    // Check each child
-    for(IWindow child: m_children) {
-      IWindow result = child.getWindowByPoint(point);
+    // Check each child that could contain the point
+    x = x - getX();
+    y = y - getY();
+    List<Window> candidates = m_children;
+    if(m_children.size()>=GRID_THRESHOLD)
+      candidates = getGrid().getCandidates(x, y);
+    for(int index=0; index<candidates.size(); index++) {
+      Window result = candidates.get(index).hitTest(x, y);
       if(result!=null)
         return result;
       }
@@ -97,7 +128,10 @@ public class Container extends Window {
    * @param window the Window to add as a child.
    */
   void add(Window child) {
+    child.m_order = m_nextOrder++;
     m_children.add(child);
+    if(m_grid!=null)
+      m_grid.add(child);
     }
   
   /** Remove a child window from this container
@@ -105,8 +139,89 @@ public class Container extends Window {
    * @param window the Window to remove
    */
   public void remove(Window child) {
-    if(m_children.remove(child))
+    if(m_children.remove(child)) {
+      if(m_grid!=null)
+        m_grid.remove(child);
+      child.releaseLayer();
+      Application.getInstance().releaseTarget(child);
       child.onClose();
+      }
+    }
+  
+  /** Get the spatial index of the child windows
+   * 
+   * The grid is built when first needed and again if the container changes
+   * size, after that it is updated as the children change.
+   * 
+   * @return the WindowGrid for this container.
+   */
+  private WindowGrid getGrid() {
+    if((m_grid==null)||!m_grid.matches(getWidth(), getHeight())) {
+      m_grid = new WindowGrid(getWidth(), getHeight());
+      for(int index=0; index<m_children.size(); index++)
+        m_grid.add(m_children.get(index));
+      }
+    return m_grid;
+    }
+
+  /** Repaint an area of the container on the next update
+   * 
+   * This is only used for the top level container (one with no parent).
+   * The area is repainted along with any dirty windows without making the
+   * whole container dirty.
+   * 
+   * @param area the area to repaint (in absolute co-ordinates).
+   */
+  void expose(IRectangle area) {
+    if(m_exposed==null)
+      m_exposed = new DamageTracker();
+    m_exposed.add(area);
+    Application app = Application.getInstance();
+    if(app!=null)
+      app.wakeup();
+    }
+  
+  /** Called when a child window moves, changes size or visibility
+   * 
+   * @param child the child window that has changed.
+   */
+  void childChanged(Window child) {
+    if(m_grid!=null)
+      m_grid.update(child);
+    }
+  
+  /** Keep a copy of the container contents in memory
+   * 
+   * A cached container renders itself and all it's children into an
+   * offscreen buffer. Later repaints simply copy the buffer to the display
+   * until the container or one of it's children is marked as dirty. This
+   * is useful for complex containers that change rarely.
+   * 
+   * The cached copy replaces everything beneath the container so caching
+   * is only used for opaque containers (see setOpaque()). The memory used
+   * by all cached containers is limited (see Application.setLayerBudget()).
+   * 
+   * @param cached true if the container should be cached.
+   */
+  public void setCached(boolean cached) {
+    // Any change ?
+    if(areFlagsSet(WIN_FLAG_CACHED)==cached)
+      return;
+    if(cached)
+      setFlags(WIN_FLAG_CACHED);
+    else {
+      clearFlags(WIN_FLAG_CACHED);
+      releaseLayer();
+      }
+    setDirty(true);
+    }
+  
+  /** Determine if the container keeps a copy of it's contents in memory
+   * 
+   * @return true if the container is cached.
+   */
+  public boolean isCached() {
+    return areFlagsSet(WIN_FLAG_CACHED);
     }
     
   /** Find all dirty children of this container
@@ -121,10 +236,120 @@ public class Container extends Window {
     if(isDirty())
       children.add(this);
     else {
+      // Part of the container may need painting as well as the children
+      if(hasDirtyRegion())
+        children.add(this);
       // Walk through our children and add them
-      for(Window child: m_children)
-        child.findDirtyChildren(children);
+      for(int index=0; index<m_children.size(); index++)
+        m_children.get(index).findDirtyChildren(children);
+      }
+    }
+  
+  /** Set up the clip for an area that may be hidden by child windows
+   * 
+   * Child windows are painted in order so each child is above those
+   * before it. Any opaque child windows painted after the given area will
+   * hide part (or all) of it. If the area is not completely hidden the
+   * visible part is pushed on to the clip stack and must be removed with
+   * popClip() when painting is complete.
+   * 
+   * @param area the area to be painted (in absolute co-ordinates).
+   * @param first the index of the first child window painted above the
+   *              area.
+   * 
+   * @return true if some of the area is visible and a clip was pushed,
+   *         false if the area is completely hidden.
+   */
+  private boolean pushVisibleClip(IRectangle area, int first) {
+    if(m_visible==null)
+      m_visible = new Rectangle(0, 0, 0, 0);
+    boolean visible = Rectangle.intersection(area, Application.getInstance().getClip(), m_visible);
+    for(int index=first; visible&&(index<m_children.size()); index++) {
+      Window child = m_children.get(index);
+      if(child.isVisible()&&child.isOpaque())
+        visible = Rectangle.subtract(m_visible, child.getAbsolute(), m_visible);
       }
+    if(!visible)
+      return false;
+    Application.getInstance().pushClip(m_visible);
+    return true;
+    }
+  
+  /** Paint the container and all children
+   * 
+   * Assumes the clip has already been set to the area of the container.
+   */
+  private void paintContents() {
+    // Repaint ourselves (unless our children hide us completely)
+    if(pushVisibleClip(getAbsolute(), 0)) {
+      super.doRepaint(true);
+      Application.getInstance().popClip();
+      }
+    // Repaint everything that is not hidden
+    for(int index=0; index<m_children.size(); index++) {
+      Window child = m_children.get(index);
+      if(!pushVisibleClip(child.getAbsolute(), index + 1)) {
+        child.markClean();
+        continue;
+        }
+      setOffset(this.getAbsolute());
+      child.doRepaint(true);
+      Application.getInstance().popClip();
+      }
+    }
+  
+  /** Paint the container from it's cached copy
+   * 
+   * The cached copy is rendered first if it is out of date. The copy is
+   * then drawn within the current clipping region.
+   * 
+   * @return true if the container was painted, false if a cached copy
+   *         cannot be used.
+   */
+  private boolean paintCached() {
+    if(!(isCached()&&isOpaque()))
+      return false;
+    Application app = Application.getInstance();
+    LayerCache cache = app.getLayerCache();
+    IRectangle area = getAbsolute();
+    FrameBuffer layer = cache.get(this);
+    if((layer==null)||(layer.getWidth()!=area.getWidth())||(layer.getHeight()!=area.getHeight())) {
+      layer = cache.allocate(this, area.getWidth(), area.getHeight());
+      if(layer==null)
+        return false;
+      m_layerValid = false;
+      }
+    // Render the contents if needed
+    if(!m_layerValid) {
+      app.beginLayer(layer, area);
+      paintContents();
+      app.endLayer();
+      m_layerValid = true;
+      }
+    // Now show it
+    app.drawLayer(area, layer);
+    markClean();
+    return true;
+    }
+  
+  /** Discard the cached copy of this container
+   * 
+   * Parent containers are also invalidated as they include our contents.
+   */
+  @Override
+  void invalidateLayer() {
+    m_layerValid = false;
+    super.invalidateLayer();
+    }
+  
+  /** Release the offscreen buffers used by this container and it's children
+   */
+  @Override
+  void releaseLayer() {
+    m_layerValid = false;
+    Application.getInstance().getLayerCache().remove(this);
+    for(Window child: m_children)
+      child.releaseLayer();
     }
   
   //-------------------------------------------------------------------------
@@ -148,30 +373,108 @@ public class Container extends Window {
       }
     // If we are dirty repaint our children as well
     if(isDirty()||force) {
-      beginPaint();
-      // Repaint ourselves
-      super.doRepaint(true);
-      // Repaint everything
-      for(Window child: m_children) {
-        setOffset(this.getAbsolute());
-        child.doRepaint(true);
+      // Children are clipped to our area
+      Application.getInstance().pushClip(getAbsolute());
+      if(Application.getInstance().isClipEmpty())
+        // Nothing will be visible, just reset the dirty state
+        markClean();
+      else {
+        beginPaint();
+        if(!paintCached())
+          paintContents();
+        endPaint();
         }
-      endPaint();
+      Application.getInstance().popClip();
       }
     else {
-      // Only repaint child windows that need it
-      List<Window> children = new ArrayList<Window>();
-      findDirtyChildren(children);
-      for(Window child: children) {
-        beginPaint();
-        // TODO: Should repaint our background before painting the child
-        setOffset(child.getParent());
-        child.doRepaint(false);
-        endPaint();
+      // Collect the areas covered by child windows that need repainting
+      if(m_dirty==null)
+        m_dirty = new ArrayList<Window>();
+      findDirtyChildren(m_dirty);
+      DamageTracker damage = Application.getInstance().getDamageTracker();
+      damage.clear();
+      for(int index=0; index<m_dirty.size(); index++)
+        m_dirty.get(index).addDamage(damage);
+      m_dirty.clear();
+      // Include any areas uncovered by moving windows
+      if(m_exposed!=null) {
+        for(int index=0; index<m_exposed.getCount(); index++)
+          damage.add(m_exposed.getRegion(index));
+        m_exposed.clear();
         }
+      // Repaint everything that overlaps each region in a single operation
+      for(int index=0; index<damage.getCount(); index++) {
+        Application.getInstance().pushClip(damage.getRegion(index));
+        if(!Application.getInstance().isClipEmpty()) {
+          beginPaint();
+          paintRegion();
+          endPaint();
+          }
+        Application.getInstance().popClip();
+        }
+      Application.getInstance().setDamageArea(damage.getArea());
       }
+    if(m_exposed!=null)
+      m_exposed.clear();
     setDirty(false);
     }
+
+  /** Repaint the portion of the container inside the current clipping region
+   * 
+   * The container is painted first followed by all the child windows that
+   * overlap the region. Child windows are clipped to the container.
+   */
+  @Override
+  void paintRegion() {
+    if(!isVisible())
+      return;
+    Application.getInstance().pushClip(getAbsolute());
+    if((!Application.getInstance().isClipEmpty())&&!paintCached()) {
+      if(pushVisibleClip(getAbsolute(), 0)) {
+        super.paintRegion();
+        Application.getInstance().popClip();
+        }
+      for(int index=0; index<m_children.size(); index++) {
+        Window child = m_children.get(index);
+        if(!pushVisibleClip(child.getAbsolute(), index + 1)) {
+          child.markClean();
+          continue;
+          }
+        child.paintRegion();
+        Application.getInstance().popClip();
+        }
+      }
+    Application.getInstance().popClip();
+    }
+  
+  /** Clear the dirty state of this container and all it's children
+   * 
+   * Used when the container cannot be seen so there is nothing to paint.
+   */
+  @Override
+  void markClean() {
+    super.markClean();
+    for(int index=0; index<m_children.size(); index++)
+      m_children.get(index).markClean();
+    }
+  
+  /** Determine if anything in this container needs to be repainted
+   * 
+   * @return true if the container or any visible child window needs to be
+   *         repainted.
+   */
+  @Override
+  boolean needsRepaint() {
+    if(!isVisible())
+      return false;
+    if(isDirty()||hasDirtyRegion()||((m_exposed!=null)&&!m_exposed.isEmpty()))
+      return true;
+    for(int index=0; index<m_children.size(); index++) {
+      if(m_children.get(index).needsRepaint())
+        return true;
+      }
+    return false;
+    }
   
   /** Called to do an update of the window.
    * 
@@ -184,8 +487,24 @@ public class Container extends Window {
     if((m_children==null)||(m_children.size()==0))
       return;
     // Process all child windows
-    for(Window child: m_children)
-      child.doUpdate();
+    for(int index=0; index<m_children.size(); index++)
+      m_children.get(index).doUpdate();
+    }
+  
+  //-------------------------------------------------------------------------
+  // Public event methods
+  //-------------------------------------------------------------------------
+
+  /** Called when the window is removed from it's parent
+   * 
+   * The child windows are removed along with the container so they are
+   * closed as well. Classes that override this method should call the
+   * parent implementation.
+   */
+  @Override
+  public void onClose() {
+    for(int index=0; index<m_children.size(); index++)
+      m_children.get(index).onClose();
     }
   
   }
@@ -0,0 +1,204 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+/** Collects the areas of the display that need to be repainted.
+ * 
+ * Rectangles added to the tracker are merged into a small set of disjoint
+ * regions. Overlapping rectangles are always merged, rectangles that do
+ * not overlap are merged if the number of pixels that would be painted
+ * unnecessarily (the area of the combined rectangle that is not covered by
+ * either of the originals) does not exceed the merge threshold. The number
+ * of regions is also limited, if the limit is reached the new rectangle is
+ * merged with the region that wastes the least area.
+ * 
+ * The tracker is used on every repaint so it does not create any new
+ * objects once it has been constructed.
+ */
+class DamageTracker {
+  //--- Constants
+  static final int DEFAULT_THRESHOLD = 1024; //! Default merge threshold (in pixels)
+  static final int MAX_REGIONS       = 8;    //! Maximum number of regions to track
+
+  //--- Instance variables
+  private Rectangle[] m_regions;   //! The current set of regions (entries are reused)
+  private int         m_count;     //! Number of regions in use
+  private Rectangle   m_current;   //! Working area used while adding a region
+  private int         m_threshold; //! Merge threshold in pixels
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Default constructor
+   */
+  DamageTracker() {
+    m_regions = new Rectangle[MAX_REGIONS];
+    for(int index=0; index<MAX_REGIONS; index++)
+      m_regions[index] = new Rectangle(0, 0, 0, 0);
+    m_current = new Rectangle(0, 0, 0, 0);
+    m_threshold = DEFAULT_THRESHOLD;
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Determine the area wasted by merging two rectangles
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * 
+   * @return the number of pixels in the union of the two rectangles that
+   *         are not covered by either of them.
+   */
+  private static int waste(IRectangle a, IRectangle b) {
+    int ax2 = a.getX() + a.getWidth(), ay2 = a.getY() + a.getHeight();
+    int bx2 = b.getX() + b.getWidth(), by2 = b.getY() + b.getHeight();
+    int covered = Rectangle.area(a) + Rectangle.area(b);
+    if(Rectangle.intersects(a, b))
+      covered = covered - ((Math.min(ax2, bx2) - Math.max(a.getX(), b.getX())) * (Math.min(ay2, by2) - Math.max(a.getY(), b.getY())));
+    int union = (Math.max(ax2, bx2) - Math.min(a.getX(), b.getX())) * (Math.max(ay2, by2) - Math.min(a.getY(), b.getY()));
+    return union - covered;
+    }
+
+  /** Remove a region
+   * 
+   * The order of the remaining regions is not preserved.
+   * 
+   * @param index the index of the region to remove.
+   */
+  private void remove(int index) {
+    Rectangle removed = m_regions[index];
+    m_count--;
+    m_regions[index] = m_regions[m_count];
+    m_regions[m_count] = removed;
+    }
+
+  /** Find a region that should be merged with the given rectangle
+   * 
+   * @param rect the rectangle to test.
+   * @param force if true always return the best candidate regardless of
+   *              the merge threshold.
+   * 
+   * @return the index of the region to merge with or -1 if there is no
+   *         suitable region.
+   */
+  private int findMerge(IRectangle rect, boolean force) {
+    int best = -1, bestWaste = Integer.MAX_VALUE;
+    for(int index=0; index<m_count; index++) {
+      Rectangle region = m_regions[index];
+      // Overlapping regions must always be merged
+      if(Rectangle.intersects(rect, region))
+        return index;
+      int wasted = waste(rect, region);
+      if(wasted<bestWaste) {
+        best = index;
+        bestWaste = wasted;
+        }
+      }
+    if(force||(bestWaste<=m_threshold))
+      return best;
+    return -1;
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Get the merge threshold
+   * 
+   * @return the maximum number of unnecessary pixels allowed when merging
+   *         two regions.
+   */
+  int getThreshold() {
+    return m_threshold;
+    }
+
+  /** Set the merge threshold
+   * 
+   * A threshold of 0 will only merge rectangles that overlap or that can
+   * be combined without painting any additional pixels.
+   * 
+   * @param threshold the maximum number of unnecessary pixels allowed when
+   *                  merging two regions.
+   */
+  void setThreshold(int threshold) {
+    m_threshold = Math.max(0, threshold);
+    }
+
+  /** Remove all regions
+   */
+  void clear() {
+    m_count = 0;
+    }
+
+  /** Determine if there is any damage
+   * 
+   * @return true if no regions have been added.
+   */
+  boolean isEmpty() {
+    return m_count==0;
+    }
+
+  /** Add a damaged area
+   * 
+   * @param rect the rectangle describing the area that needs to be
+   *             repainted (in absolute co-ordinates).
+   */
+  void add(IRectangle rect) {
+    if(Rectangle.area(rect)==0)
+      return;
+    m_current.x = rect.getX();
+    m_current.y = rect.getY();
+    m_current.width = rect.getWidth();
+    m_current.height = rect.getHeight();
+    while(true) {
+      int index = findMerge(m_current, m_count>=MAX_REGIONS);
+      if(index<0)
+        break;
+      // Merge and try again (the new region may now overlap others)
+      Rectangle.union(m_current, m_regions[index], m_current);
+      remove(index);
+      }
+    Rectangle region = m_regions[m_count++];
+    region.x = m_current.x;
+    region.y = m_current.y;
+    region.width = m_current.width;
+    region.height = m_current.height;
+    }
+
+  /** Get the number of regions
+   * 
+   * @return the number of disjoint regions that need to be repainted.
+   */
+  int getCount() {
+    return m_count;
+    }
+
+  /** Get a single region
+   * 
+   * The returned instance is reused by the tracker, it is only valid until
+   * the next call to add() or clear().
+   * 
+   * @param index the index of the region (0 to getCount() - 1).
+   * 
+   * @return the region at the given index.
+   */
+  Rectangle getRegion(int index) {
+    return m_regions[index];
+    }
+
+  /** Get the total damaged area
+   * 
+   * @return the total number of pixels covered by all regions.
+   */
+  int getArea() {
+    int area = 0;
+    for(int index=0; index<m_count; index++)
+      area = area + Rectangle.area(m_regions[index]);
+    return area;
+    }
+
+  }
@@ -7,9 +7,41 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
+//--- Imports
+import java.util.concurrent.atomic.*;
+
 /** Represents a modal dialog.
+ * 
+ * A dialog can run a background activity (see start()). The activity runs
+ * on a thread provided by the Application executor, progress, completion and
+ * failure are passed back to the dialog on the event loop thread. By default
+ * the dialog is hidden as soon as the activity finishes.
  */
 public class Dialog extends Container {
+  /** A background activity run by the dialog
+   * 
+   */
+  public interface Activity {
+    /** Called on a background thread to perform the activity.
+     * 
+     * The activity must not change any windows directly, use
+     * Dialog.setProgress() to report progress.
+     * 
+     * @param dialog the dialog that started the activity.
+     * 
+     * @throws Exception if the activity fails. The exception is passed to
+     *                   Dialog.onFailure().
+     */
+    public void run(Dialog dialog) throws Exception;
+
+    };
+
+  //--- Instance variables
+  private boolean       m_active;   //! True if an activity is running
+  private volatile int  m_progress; //! Most recent progress reported by the activity
+  private AtomicBoolean m_pending;  //! True if a progress update has been posted
+  private Runnable      m_update;   //! Delivers progress updates on the event loop thread
+
   /** Default constructor
    * 
    */
@@ -21,7 +53,7 @@ public class Dialog extends Container {
         )
       );
     }
-  
+
   /** Constructor with a dialog size
    */
   public Dialog(Dimension size) {
@@ -29,12 +61,118 @@ public class Dialog extends Container {
     // Adjust the position of the dialog to center it
     setX((Application.getInstance().getWidth() - getWidth()) / 2);
     setY((Application.getInstance().getHeight() - getHeight()) / 2);
+    // Set up progress reporting
+    m_pending = new AtomicBoolean();
+    m_update = new Runnable() {
+      public void run() {
+        m_pending.set(false);
+        if(m_active)
+          onProgress(m_progress);
+        }
+      };
+    }
+
+  //-------------------------------------------------------------------------
+  // Background activities
+  //-------------------------------------------------------------------------
+
+  /** Start a background activity
+   * 
+   * The activity is run with the Application executor. When it finishes
+   * either onComplete() or onFailure() is called on the event loop thread.
+   * This method must be called from the event loop thread.
+   * 
+   * @param activity the activity to run.
+   * 
+   * @return true if the activity was started, false if another activity is
+   *         still running.
+   */
+  public boolean start(final Activity activity) {
+    if((activity==null)||m_active)
+      return false;
+    m_active = true;
+    final Application app = Application.getInstance();
+    app.getExecutor().execute(
+      new Runnable() {
+        public void run() {
+          Throwable failure = null;
+          try {
+            activity.run(Dialog.this);
+            }
+          catch(Throwable ex) {
+            failure = ex;
+            }
+          // Report the result on the event loop thread
+          final Throwable result = failure;
+          app.post(
+            new Runnable() {
+              public void run() {
+                m_active = false;
+                if(result==null)
+                  onComplete();
+                else
+                  onFailure(result);
+                }
+              }
+            );
+          }
+        }
+      );
+    return true;
+    }
+
+  /** Determine if a background activity is running
+   * 
+   * @return true if an activity has been started and has not finished.
+   */
+  public boolean isActive() {
+    return m_active;
+    }
+
+  /** Report the progress of the background activity
+   * 
+   * This may be called from any thread. Updates are passed to onProgress()
+   * on the event loop thread, if several updates are made before it is
+   * called only the latest value is passed.
+   * 
+   * @param progress the progress made (the meaning is up to the dialog).
+   */
+  public void setProgress(int progress) {
+    m_progress = progress;
+    if(!m_pending.getAndSet(true))
+      Application.getInstance().post(m_update);
+    }
+
+  /** Called when the background activity reports progress
+   * 
+   * @param progress the most recent progress reported.
+   */
+  protected void onProgress(int progress) {
+    // Nothing to do in this implementation
+    }
+
+  /** Called when the background activity completes successfully
+   * 
+   * This implementation hides the dialog.
+   */
+  protected void onComplete() {
+    setVisible(false);
+    }
+
+  /** Called when the background activity fails
+   * 
+   * This implementation hides the dialog.
+   * 
+   * @param error the exception thrown by the activity.
+   */
+  protected void onFailure(Throwable error) {
+    setVisible(false);
     }
 
   //-------------------------------------------------------------------------
   // Implement of IWindow
   //-------------------------------------------------------------------------
-  
+
   /** Called to erase the background of the window.
    */
   @Override
@@ -51,5 +189,5 @@ public class Dialog extends Container {
       Application.getInstance().getSystemColor(Application.SYS_COLOR_CTRL_BORDER)
       );
     }
-  
+
   }
@@ -7,22 +7,101 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
-import java.io.*;
 //--- Imports
+import java.lang.ref.*;
+import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /** Java interface to the graphics driver.
- *
+ * 
  * This class defines the interface to the native methods provided by the
  * QuickGFX driver. It is not visible (or accessible) outside of the package.
  * The class is a singleton, only one driver can be used at any given time.
+ * 
+ * If the system property 'quickui.driver' is set to 'software' the native
+ * library is not loaded at all and all drawing operations are performed on
+ * a FrameBuffer instead. This allows the framework to run headless.
+ * 
+ * When using the native driver drawing operations performed between
+ * beginPaint() and endPaint() are recorded in a CommandBuffer and sent to
+ * the driver in a single call when the outermost paint operation completes.
+ * Setting the system property 'quickui.batch' to 'false' disables this and
+ * every operation is sent to the driver as soon as it is requested.
+ * 
+ * Images, fonts and palettes are registered with the native driver the
+ * first time they are drawn and are then referred to by an integer handle
+ * so the asset data does not need to be passed for every operation. The
+ * handle is released when the asset is no longer reachable (or when
+ * Asset.release() or releaseAssets() is called).
  */
 class Driver implements ISurface {
   //--- Internal constants
   private static final Rectangle DEFAULT_SOURCE = new Rectangle(0, 0, -1, -1);
+  private static final String    NATIVE_LIBRARY = "jniquickgfx";
+  private static final String    DRIVER_OPTION  = "quickui.driver";
+  private static final String    DRIVER_SOFTWARE = "software";
+  private static final String    BATCH_OPTION   = "quickui.batch";
+  private static final int       EVENT_FIELDS   = 4;   //! Values transferred for each event (type, x, y, time)
+  private static final int       EVENT_BATCH    = 256; //! Maximum number of events transferred at once
+  
+  //--- Software display sizes (these match the VNC driver)
+  private static final int DEFAULT_DISPLAY_WIDTH  = 320;
+  private static final int DEFAULT_DISPLAY_HEIGHT = 240;
+  private static final int MIN_DISPLAY_WIDTH      = 128;
+  private static final int MIN_DISPLAY_HEIGHT     = 128;
+  private static final int MAX_DISPLAY_WIDTH      = 1024;
+  private static final int MAX_DISPLAY_HEIGHT     = 768;
+  
+  //--- Asset registry
+  private static final int INITIAL_REGISTRATIONS = 32; //! Initial size of the registration table
+  
+  /** The registration of an asset with the native driver
+   * 
+   * This is also the cleaning action for the asset, when the asset is no
+   * longer reachable (or is released explicitly) the registration is queued
+   * and the handle is released by the event loop thread. It must never
+   * refer to the asset itself.
+   */
+  static class Registration implements Runnable {
+    private int                 m_handle;    //! The native handle (NO_HANDLE once released)
+    private Queue<Registration> m_queue;     //! Queue of registrations to release
+    private Cleaner.Cleanable   m_cleanable; //! Cleaner entry for the asset
+    
+    Registration(int handle, Queue<Registration> queue) {
+      m_handle = handle;
+      m_queue = queue;
+      }
+    
+    /** Get the native handle
+     * 
+     * @return the handle or Asset.NO_HANDLE if it has been released.
+     */
+    int getHandle() {
+      return m_handle;
+      }
+    
+    /** Queue the handle to be released (called at most once)
+     */
+    public void run() {
+      m_queue.add(this);
+      }
+    }
   
   //--- Instance variables
-  private Queue<TouchEvent> m_events; //! The event queue.
+  private EventQueue        m_events;      //! The event queue.
+  private IntBuffer         m_eventData;   //! Buffer for events transferred from the native driver
+  private TouchEvent        m_event;       //! The event returned by nextTouchEvent()
+  private FrameBuffer       m_framebuffer; //! Software display (null if using the native driver)
+  private CommandBuffer     m_commands;    //! Recorded drawing commands (null if not batching)
+  private int               m_paintDepth;  //! Nesting level of paint operations
+  private TextCache         m_text;        //! Pre-rendered strings
+  private byte[]            m_string;      //! Buffer for strings passed to the native driver
+  private Object            m_waitLock;    //! Used to wait for events with the software display
+  private boolean           m_wakeup;      //! True if a wake up has been requested (software display)
+  private Cleaner           m_cleaner;     //! Releases the handles of unreachable assets
+  private Registration[]    m_registered;  //! Current registrations (indexed by handle)
+  private Queue<Registration> m_released;  //! Registrations waiting to be released
   
   //-------------------------------------------------------------------------
   // Singleton management
@@ -31,9 +110,34 @@ class Driver implements ISurface {
   // The singleton instance
   private static Driver m_instance;
 
-  // Load the library.
-  static {
-    System.loadLibrary("jniquickgfx");
+  /** Determine if the native driver should be used
+   * 
+   * The native library is loaded as a side effect unless a software driver
+   * has been requested.
+   * 
+   * @return true if the native driver should be used, false if drawing
+   *         should be done in software.
+   */
+  private static boolean useNativeDriver() {
+    if(DRIVER_SOFTWARE.equals(System.getProperty(DRIVER_OPTION)))
+      return false;
+    System.loadLibrary(NATIVE_LIBRARY);
+    return true;
+    }
+  
+  /** Clamp a requested display size to the supported range
+   * 
+   * @param size the requested size (0 or less to use the default).
+   * @param defSize the default size.
+   * @param minSize the minimum size.
+   * @param maxSize the maximum size.
+   * 
+   * @return the size to use.
+   */
+  private static int displaySize(int size, int defSize, int minSize, int maxSize) {
+    if(size<=0)
+      size = defSize;
+    return Math.max(minSize, Math.min(maxSize, size));
     }
   
   /** Get the current instance
@@ -55,11 +159,20 @@ class Driver implements ISurface {
         return m_instance;
       // Create a new instance and initialise it
       m_instance = new Driver();
+      if(!useNativeDriver()) {
+        m_instance.m_framebuffer = new FrameBuffer(
+          displaySize(width, DEFAULT_DISPLAY_WIDTH, MIN_DISPLAY_WIDTH, MAX_DISPLAY_WIDTH),
+          displaySize(height, DEFAULT_DISPLAY_HEIGHT, MIN_DISPLAY_HEIGHT, MAX_DISPLAY_HEIGHT)
+          );
+        return m_instance;
+        }
       // TODO: Determine the width and height to request
       if(m_instance.gfxInit(width, height)!=0) {
         // Failed to initialise driver
         m_instance = null;
         }
+      else if(!"false".equals(System.getProperty(BATCH_OPTION)))
+        m_instance.m_commands = new CommandBuffer();
       // All done
       return m_instance;
       }
@@ -84,7 +197,12 @@ class Driver implements ISurface {
   /** Default constructor
    */
   private Driver() {
-    m_events = new LinkedList<TouchEvent>();
+    m_events = new EventQueue(EventQueue.DEFAULT_CAPACITY);
+    m_event = new TouchEvent(TouchEvent.GFX_EVENT_TOUCH, 0, 0, 0);
+    m_text = new TextCache(this);
+    m_waitLock = new Object();
+    m_registered = new Registration[INITIAL_REGISTRATIONS];
+    m_released = new ConcurrentLinkedQueue<Registration>();
     }
   
   //-------------------------------------------------------------------------
@@ -117,7 +235,7 @@ class Driver implements ISurface {
 
   /** Draw a portion of an icon to the display 
    */
-  private native int gfxDrawImage(int x, int y, byte[] image, int sx, int sy, int w, int h, byte[] mask, int color, byte[] palette);
+  private native int gfxDrawImage(int x, int y, int image, int sx, int sy, int w, int h, int mask, int color, int palette);
 
   /** Draw a line from one point to another 
    */
@@ -130,16 +248,80 @@ class Driver implements ISurface {
   /** Draw a single character from a font
    * 
    */
-  private native int gfxDrawChar(byte[] font, int x, int y, int color, byte ch);
+  private native int gfxDrawChar(int font, int x, int y, int color, byte ch);
   
   /** Draw a string with the given font
    * 
    */
-  private native int gfxDrawString(byte[] font, int x, int y, int color, byte[] text);
+  private native int gfxDrawString(int font, int x, int y, int color, byte[] text);
+  
+  /** Copy a block of RGB565 pixels to the display
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the block in pixels.
+   * @param height the height of the block in pixels.
+   * @param pixels the pixel data (row by row with no padding).
+   */
+  private native int gfxDrawBuffer(int x, int y, int width, int height, short[] pixels);
   
-  /** Process pending events
+  /** Copy a block of RGB565 pixels from the display
+   * 
+   * This is only possible if the native driver allows direct access to it's
+   * framebuffer.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the block in pixels.
+   * @param height the height of the block in pixels.
+   * @param pixels the array to receive the pixel data (row by row with no
+   *               padding).
+   * 
+   * @return 0 if the pixels were copied, an error code if not.
+   */
+  private native int gfxReadBuffer(int x, int y, int width, int height, short[] pixels);
+  
+  /** Execute a list of recorded drawing commands
+   * 
+   * @param commands the encoded commands (see CommandBuffer).
+   * @param length the number of valid entries in the command list.
+   * @param assets the assets referenced by the commands.
    */
-  private native int gfxCheckEvents();
+  private native int gfxExecute(int[] commands, int length, Object[] assets);
+  
+  /** Register an asset with the native driver
+   * 
+   * @param data the asset data (a direct ByteBuffer).
+   * 
+   * @return the handle for the asset or a negative value if it could not
+   *         be registered.
+   */
+  private native int gfxRegisterAsset(ByteBuffer data);
+  
+  /** Release an asset registered with the native driver
+   * 
+   * @param handle the handle returned by gfxRegisterAsset().
+   */
+  private native int gfxUnregisterAsset(int handle);
+  
+  /** Transfer all pending events
+   * 
+   * @param buffer a direct buffer to receive the events. Each event is
+   *               stored as EVENT_FIELDS values (type, x, y, time).
+   * 
+   * @return the number of events transferred or a negative error code.
+   */
+  private native int gfxReadEvents(IntBuffer buffer);
+  
+  /** Wait for events
+   * 
+   * @param timeout the maximum time to wait (in milliseconds).
+   */
+  private native int gfxWaitEvents(int timeout);
+  
+  /** Stop waiting for events (may be called from any thread)
+   */
+  private native int gfxWakeup();
   
   /** Get the width of the display in pixels
    * 
@@ -167,6 +349,78 @@ class Driver implements ISurface {
    */
   private native void gfxGetBuffer(byte[] buffer);
   
+  //-------------------------------------------------------------------------
+  // Command recording
+  //-------------------------------------------------------------------------
+
+  /** Determine if drawing operations should be recorded
+   * 
+   * @return true if the operation should be added to the command buffer
+   *         rather than sent directly to the native driver.
+   */
+  private boolean isRecording() {
+    return (m_commands!=null)&&(m_paintDepth>0);
+    }
+  
+  /** Get the native handle for an asset
+   * 
+   * The asset is registered with the native driver if it has not been
+   * already.
+   * 
+   * @param asset the Asset to get the handle for (may be null).
+   * 
+   * @return the handle for the asset or Asset.NO_HANDLE if the asset is
+   *         null or could not be registered.
+   */
+  private int getHandle(Asset asset) {
+    if(asset==null)
+      return Asset.NO_HANDLE;
+    int handle = asset.getHandle();
+    if((handle==Asset.NO_HANDLE)&&(asset.getBuffer()!=null)) {
+      // Free the handles of assets that have gone away first
+      releasePending();
+      handle = gfxRegisterAsset(asset.getBuffer());
+      if(handle<0)
+        return Asset.NO_HANDLE;
+      if(m_cleaner==null)
+        m_cleaner = Cleaner.create();
+      if(handle>=m_registered.length)
+        m_registered = Arrays.copyOf(m_registered, Math.max(handle + 1, m_registered.length * 2));
+      Registration registration = new Registration(handle, m_released);
+      registration.m_cleanable = m_cleaner.register(asset, registration);
+      m_registered[handle] = registration;
+      asset.setRegistration(registration);
+      }
+    return handle;
+    }
+  
+  /** Release the handles of assets that are no longer needed
+   * 
+   * Any recorded commands are sent to the driver first as they may still
+   * refer to the handles being released.
+   */
+  private void releasePending() {
+    if(m_released.isEmpty())
+      return;
+    if(isRecording())
+      flushCommands();
+    Registration registration;
+    while((registration=m_released.poll())!=null) {
+      gfxUnregisterAsset(registration.m_handle);
+      m_registered[registration.m_handle] = null;
+      registration.m_handle = Asset.NO_HANDLE;
+      }
+    }
+  
+  /** Send all recorded commands to the native driver
+   */
+  private void flushCommands() {
+    if(m_commands.isEmpty())
+      return;
+    gfxExecute(m_commands.getCommands(), m_commands.getLength(), m_commands.getAssets());
+    m_commands.clear();
+    }
+  
   //-------------------------------------------------------------------------
   // Implementation of IDimension
   //-------------------------------------------------------------------------
@@ -176,6 +430,8 @@ class Driver implements ISurface {
    * @return the width of the rectangle.
    */
   public int getWidth() {
+    if(m_framebuffer!=null)
+      return m_framebuffer.getWidth();
     return gfxGetWidth();
     }
   
@@ -192,6 +448,8 @@ class Driver implements ISurface {
    * @return the height of the rectangle.
    */
   public int getHeight() {
+    if(m_framebuffer!=null)
+      return m_framebuffer.getHeight();
     return gfxGetHeight();
     }
   
@@ -215,7 +473,14 @@ class Driver implements ISurface {
    * It is used to help the driver optimise updates to the physical display.
    */
   public void beginPaint() {
-    gfxBeginPaint();
+    if(m_framebuffer!=null)
+      m_framebuffer.beginPaint();
+    else if(m_commands!=null) {
+      m_paintDepth++;
+      m_commands.add(CommandBuffer.CMD_BEGIN_PAINT);
+      }
+    else
+      gfxBeginPaint();
     }
   
   /** End a paint operation.
@@ -223,7 +488,16 @@ class Driver implements ISurface {
    * This method is used to signal the end of a complex paint operation.
    */
   public void endPaint() {
-    gfxEndPaint();
+    if(m_framebuffer!=null)
+      m_framebuffer.endPaint();
+    else if(isRecording()) {
+      m_commands.add(CommandBuffer.CMD_END_PAINT);
+      // Send everything once the outermost paint is complete
+      if(--m_paintDepth==0)
+        flushCommands();
+      }
+    else
+      gfxEndPaint();
     }
 
   /** Set the clipping region for future paint operations
@@ -234,7 +508,12 @@ class Driver implements ISurface {
    * @param y2 the Y co-ordinate of the top right corner of the region
    */
   public void setClip(IRectangle rect) {
-    gfxSetClip(rect.getX(), rect.getY(), rect.getX() + rect.getWidth() - 1, rect.getY() + rect.getHeight() - 1);
+    if(m_framebuffer!=null)
+      m_framebuffer.setClip(rect);
+    else if(isRecording())
+      m_commands.add(CommandBuffer.CMD_SET_CLIP, rect.getX(), rect.getY(), rect.getX() + rect.getWidth() - 1, rect.getY() + rect.getHeight() - 1);
+    else
+      gfxSetClip(rect.getX(), rect.getY(), rect.getX() + rect.getWidth() - 1, rect.getY() + rect.getHeight() - 1);
     }
 
   /** Display a single pixel.
@@ -243,7 +522,7 @@ class Driver implements ISurface {
    * @param color the Color to set the pixel to.
    */
   public void putPixel(IPoint point, Color color) {
-    gfxPutPixel(point.getX(), point.getY(), color.getNativeFormat());
+    putPixel(point.getX(), point.getY(), color.getNativeFormat());
     }
 
   /** Fill a rectangle with a specific color.
@@ -252,7 +531,7 @@ class Driver implements ISurface {
    * @param color the Color to fill the rectangle with.
    */
   public void fillRect(IRectangle rect, Color color) {
-    gfxFillRegion(rect.getX(), rect.getY(), rect.getX() + rect.getWidth() - 1, rect.getY() + rect.getHeight() - 1, color.getNativeFormat());
+    fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
     }
   
   /** Draw a line from one point to another 
@@ -262,7 +541,7 @@ class Driver implements ISurface {
    * @param color the color to draw the line in.
    */
   public void drawLine(IPoint start, IPoint end, Color color) {
-    gfxDrawLine(start.getX(), start.getY(), end.getX(), end.getY(), color.getNativeFormat());
+    drawLine(start.getX(), start.getY(), end.getX(), end.getY(), color.getNativeFormat());
     }
   
   /** Draw a box around a rectangle.
@@ -271,7 +550,7 @@ class Driver implements ISurface {
    * @param color the Color to draw the box in.
    */
   public void drawBox(IRectangle rect, Color color) {
-    gfxDrawBox(rect.getX(), rect.getY(), rect.getX() + rect.getWidth() - 1, rect.getY() + rect.getHeight() - 1, color.getNativeFormat());
+    drawBox(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
     }
 
   /** Draw an Image to the screen.
@@ -285,83 +564,225 @@ class Driver implements ISurface {
    */
   public void drawImage(IPoint point, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
     // Check parameters here before invoking the call
-    if((point==null)||(image==null))
+    if(point==null)
+      return;
+    drawImage(point.getX(), point.getY(), image, source, mask, color, palette);
+    }
+  
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param point the location to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  public void drawChar(Font font, IPoint point, Color color, char ch) {
+    drawChar(font, point.getX(), point.getY(), color, ch);
+    }
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param point the location to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  public void drawString(Font font, IPoint point, Color color, String string) {
+    drawString(font, point.getX(), point.getY(), color, string);
+    }
+
+  //-------------------------------------------------------------------------
+  // Primitive versions of the drawing operations
+  //-------------------------------------------------------------------------
+
+  /** Display a single pixel.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  public void putPixel(int x, int y, int color) {
+    if(m_framebuffer!=null)
+      m_framebuffer.putPixel(x, y, color);
+    else if(isRecording())
+      m_commands.add(CommandBuffer.CMD_PUT_PIXEL, x, y, color);
+    else
+      gfxPutPixel(x, y, color);
+    }
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to fill the rectangle with.
+   */
+  public void fillRect(int x, int y, int width, int height, int color) {
+    if(m_framebuffer!=null)
+      m_framebuffer.fillRect(x, y, width, height, color);
+    else if(isRecording())
+      m_commands.add(CommandBuffer.CMD_FILL_REGION, x, y, x + width - 1, y + height - 1, color);
+    else
+      gfxFillRegion(x, y, x + width - 1, y + height - 1, color);
+    }
+  
+  /** Draw a line from one point to another 
+   * 
+   * @param x1 the X co-ordinate of the starting point.
+   * @param y1 the Y co-ordinate of the starting point.
+   * @param x2 the X co-ordinate of the ending point.
+   * @param y2 the Y co-ordinate of the ending point.
+   * @param color the native color to draw the line in.
+   */
+  public void drawLine(int x1, int y1, int x2, int y2, int color) {
+    if(m_framebuffer!=null)
+      m_framebuffer.drawLine(x1, y1, x2, y2, color);
+    else if(isRecording())
+      m_commands.add(CommandBuffer.CMD_DRAW_LINE, x1, y1, x2, y2, color);
+    else
+      gfxDrawLine(x1, y1, x2, y2, color);
+    }
+  
+  /** Draw a box around a rectangle.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to draw the box in.
+   */
+  public void drawBox(int x, int y, int width, int height, int color) {
+    if(m_framebuffer!=null)
+      m_framebuffer.drawBox(x, y, width, height, color);
+    else if(isRecording())
+      m_commands.add(CommandBuffer.CMD_DRAW_BOX, x, y, x + width - 1, y + height - 1, color);
+    else
+      gfxDrawBox(x, y, x + width - 1, y + height - 1, color);
+    }
+
+  /** Draw an Image to the screen.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  public void drawImage(int x, int y, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
+    // Check parameters here before invoking the call
+    if(image==null)
+      return;
+    // Use the software display if we have one
+    if(m_framebuffer!=null) {
+      m_framebuffer.drawImage(x, y, image, source, mask, color, palette);
       return;
+      }
     // Set up defaults
     if(source==null)
-      source = new Rectangle(DEFAULT_SOURCE);
+      source = DEFAULT_SOURCE;
+    drawImage(x, y, image, source.getX(), source.getY(), source.getWidth(), source.getHeight(), mask, color, palette);
+    }
+  
+  /** Draw a portion of an Image using the native driver.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param sx the X co-ordinate of the portion of the image to display.
+   * @param sy the Y co-ordinate of the portion of the image to display.
+   * @param w the width of the portion of the image to display.
+   * @param h the height of the portion of the image to display.
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  private void drawImage(int x, int y, Image image, int sx, int sy, int w, int h, Icon mask, Color color, Palette palette) {
     if(color==null)
       color = Color.BLACK;
-    byte[] maskData = null;
-    if(mask!=null)
-      maskData = mask.getData();
+    int imageHandle = getHandle(image);
+    if(imageHandle==Asset.NO_HANDLE)
+      return;
+    int maskHandle = Asset.NO_HANDLE;
+    if(mask!=null) {
+      maskHandle = getHandle(mask);
+      if(maskHandle==Asset.NO_HANDLE)
+        return;
+      }
     // 4bpp images require a palette
-    byte[] paletteData = null;
+    int paletteHandle = Asset.NO_HANDLE;
     if(image.getBitsPerPixel()==4) {
-      if(palette==null)
+      paletteHandle = getHandle(palette);
+      if(paletteHandle==Asset.NO_HANDLE)
         return;
-      paletteData = palette.getData();
+      }
+    // Record it if we are in the middle of a paint
+    if(isRecording()) {
+      m_commands.addImage(x, y, imageHandle, sx, sy, w, h, maskHandle, color.getNativeFormat(), paletteHandle);
+      return;
       }
     // Now do the call
-    gfxDrawImage(
-      point.getX(), 
-      point.getY(),
-      image.getData(),
-      source.getX(),
-      source.getY(),
-      source.getWidth(),
-      source.getHeight(),
-      maskData,
-      color.getNativeFormat(),
-      paletteData
-      );
+    gfxDrawImage(x, y, imageHandle, sx, sy, w, h, maskHandle, color.getNativeFormat(), paletteHandle);
     }
   
   /** Draw a single character using the given font.
    * 
    * @param font the Font to use to render the character.
-   * @param point the location to draw the character at.
+   * @param x the X co-ordinate to draw the character at.
+   * @param y the Y co-ordinate to draw the character at.
    * @param color the Color to draw the character with.
    * @param ch the character to draw.
    */
-  public void drawChar(Font font, IPoint point, Color color, char ch) {
+  public void drawChar(Font font, int x, int y, Color color, char ch) {
     // Check parameters
-    if(font!=null)
-      gfxDrawChar(font.getData(), point.getX(), point.getY(), color.getNativeFormat(), (byte)ch);
+    if(font==null)
+      return;
+    if(m_framebuffer!=null) {
+      m_framebuffer.drawChar(font, x, y, color, ch);
+      return;
+      }
+    int handle = getHandle(font);
+    if(handle==Asset.NO_HANDLE)
+      return;
+    if(isRecording())
+      m_commands.addText(CommandBuffer.CMD_DRAW_CHAR, handle, x, y, color.getNativeFormat(), (byte)ch, null);
+    else
+      gfxDrawChar(handle, x, y, color.getNativeFormat(), (byte)ch);
     }
 
   /** Draw a string using the given font.
    * 
    * @param font the Font to use to render the character.
-   * @param point the location to draw the character at.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
    * @param color the Color to draw the character with.
    * @param string the string to draw.
    */
-  public void drawString(Font font, IPoint point, Color color, String string) {
+  public void drawString(Font font, int x, int y, Color color, String string) {
     // Check parameters
     if(font==null)
       return;
-    // Convert the string into an array of bytes
-    byte[] rawString = null;
-    // Treat null strings as empty
-    if(string==null)
-      rawString = new byte[0];
-    else {
-      // Convert to ASCII (falling back to empty if we can't)
-      try {
-        rawString = string.getBytes("US-ASCII");
-        } 
-      catch (UnsupportedEncodingException e) {
-        // Hacky, but avoids exceptions
-        rawString = new byte[0];
-        }
+    if(m_framebuffer!=null) {
+      m_framebuffer.drawString(font, x, y, color, string);
+      return;
+      }
+    // Use a pre-rendered copy of the string if we can
+    Icon run = m_text.get(font, string);
+    if(run!=null) {
+      drawImage(x, y, run, 0, 0, run.getWidth(), run.getHeight(), null, color, null);
+      return;
       }
-    // Now render it
-    if(rawString.length>0) {
-      byte[] printString = new byte[rawString.length + 1];
-      System.arraycopy(rawString, 0, printString, 0, rawString.length);
-      printString[rawString.length] = 0x00;
-      gfxDrawString(font.getData(), point.getX(), point.getY(), color.getNativeFormat(), printString);
+    // Now render it (converted to NUL terminated ASCII)
+    int handle = getHandle(font);
+    if((string==null)||(string.length()==0)||(handle==Asset.NO_HANDLE))
+      return;
+    if(isRecording())
+      m_commands.addString(handle, x, y, color.getNativeFormat(), string);
+    else {
+      m_string = Font.toASCII(string, m_string);
+      gfxDrawString(handle, x, y, color.getNativeFormat(), m_string);
       }
     }
 
@@ -369,17 +790,158 @@ class Driver implements ISurface {
   // Driver specific operations
   //-------------------------------------------------------------------------
   
+  /** Get the cache of pre-rendered strings
+   * 
+   * @return the TextCache used by drawString().
+   */
+  TextCache getTextCache() {
+    return m_text;
+    }
+  
+  /** Release the native copy of an asset
+   * 
+   * This should be called when an asset that has been drawn is no longer
+   * required. Nothing is done if the asset has not been registered with the
+   * native driver. The asset will be registered again if it is drawn after
+   * being released.
+   * 
+   * @param asset the Asset to release.
+   */
+  void releaseAsset(Asset asset) {
+    if((asset==null)||(asset.getHandle()==Asset.NO_HANDLE))
+      return;
+    asset.getRegistration().m_cleanable.clean();
+    releasePending();
+    }
+  
+  /** Release the native copies of all assets
+   * 
+   * Called when the application is shutting down. Assets will be
+   * registered again if they are drawn after this.
+   */
+  void releaseAssets() {
+    m_text.clear();
+    for(int handle=0; handle<m_registered.length; handle++) {
+      if(m_registered[handle]!=null)
+        m_registered[handle].m_cleanable.clean();
+      }
+    releasePending();
+    }
+  
+  /** Copy the contents of a FrameBuffer to the display
+   * 
+   * @param point the location of the top left corner of the buffer.
+   * @param buffer the FrameBuffer to copy.
+   */
+  public void drawFrameBuffer(IPoint point, FrameBuffer buffer) {
+    if(m_framebuffer!=null) {
+      m_framebuffer.drawFrameBuffer(point, buffer);
+      return;
+      }
+    // Anything already recorded must be drawn first
+    if(isRecording())
+      flushCommands();
+    gfxDrawBuffer(point.getX(), point.getY(), buffer.getWidth(), buffer.getHeight(), buffer.getPixels());
+    }
+  
+  /** Copy part of the display into a FrameBuffer
+   * 
+   * @param point the location of the top left corner of the area to copy.
+   * @param buffer the FrameBuffer to copy into, the size of the buffer
+   *               determines the size of the area.
+   * 
+   * @return true if the area was copied, false if the display cannot be
+   *         read.
+   */
+  public boolean readFrameBuffer(IPoint point, FrameBuffer buffer) {
+    if(m_framebuffer!=null) {
+      m_framebuffer.readFrameBuffer(point, buffer);
+      return true;
+      }
+    // Anything already recorded must be drawn first
+    if(isRecording())
+      flushCommands();
+    return gfxReadBuffer(point.getX(), point.getY(), buffer.getWidth(), buffer.getHeight(), buffer.getPixels())==0;
+    }
+  
   /** Process any input events.
    * 
+   * All pending events are transferred from the native driver in a single
+   * call and added to the event queue.
    */
   public void grabEvents() {
-    gfxCheckEvents();
+    // The software display has no input of it's own
+    if(m_framebuffer!=null)
+      return;
+    releasePending();
+    if(m_eventData==null)
+      m_eventData = ByteBuffer.allocateDirect(EVENT_BATCH * EVENT_FIELDS * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    int count = gfxReadEvents(m_eventData);
+    for(int index=0; index<(count * EVENT_FIELDS); index+=EVENT_FIELDS) {
+      int evType = m_eventData.get(index);
+      if(TouchEvent.isValidEvent(evType))
+        m_events.add(evType, m_eventData.get(index + 1), m_eventData.get(index + 2), m_eventData.get(index + 3));
+      }
+    }
+  
+  /** Wait for events
+   * 
+   * Blocks until an event is available, wakeup() is called or the timeout
+   * expires. Events still need to be collected with grabEvents() after
+   * this returns.
+   * 
+   * @param timeout the maximum time to wait (in milliseconds).
+   */
+  public void waitEvents(long timeout) {
+    if(timeout<=0)
+      return;
+    if(m_framebuffer==null) {
+      gfxWaitEvents((int)Math.min(timeout, Integer.MAX_VALUE));
+      return;
+      }
+    // The software display only has simulated events
+    synchronized(m_waitLock) {
+      if(!m_wakeup&&m_events.isEmpty()) {
+        try {
+          m_waitLock.wait(timeout);
+          }
+        catch(InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          }
+        }
+      m_wakeup = false;
+      }
+    }
+  
+  /** Stop waiting for events
+   * 
+   * Causes the current (or next) call to waitEvents() to return
+   * immediately. This method may be called from any thread.
+   */
+  public void wakeup() {
+    if(m_framebuffer==null) {
+      gfxWakeup();
+      return;
+      }
+    synchronized(m_waitLock) {
+      m_wakeup = true;
+      m_waitLock.notifyAll();
+      }
+    }
+  
+  /** Get the software display
+   * 
+   * @return the FrameBuffer being used as the display or null if the native
+   *         driver is in use.
+   */
+  public FrameBuffer getFrameBuffer() {
+    return m_framebuffer;
     }
   
   /** Push an event to the event queue
    * 
-   * This method is usually called by the native driver code but the it could
-   * also be used by the framework to simulate events if needed.
+   * This method is used by the framework to simulate events if needed, the
+   * events from the native driver are added by grabEvents().
    * 
    * @param evType the type of the event
    * @param xpos the first parameter for the event
@@ -388,17 +950,35 @@ class Driver implements ISurface {
   public void pushEvent(int evType, int xpos, int ypos) {
     if(!TouchEvent.isValidEvent(evType))
       return;
-    TouchEvent event = new TouchEvent(evType, xpos, ypos);
-    m_events.add(event);
+    m_events.add(evType, xpos, ypos, (int)(System.nanoTime() / 1000000));
+    // Simulated events may come from another thread
+    if(m_framebuffer!=null)
+      wakeup();
     }
   
   /** Get the next event
+   * 
+   * The same TouchEvent instance is returned each time, the details are
+   * replaced by the next call to this method.
    * 
    * @return the TouchEvent instance of the next event or null if no events
    *         are pending.
    */
   public TouchEvent nextTouchEvent() {
-    return m_events.poll();
+    if(!m_events.poll(m_event))
+      return null;
+    return m_event;
+    }
+
+  /** Get the number of dropped events
+   * 
+   * The event queue has a fixed size, drag events are merged and events are
+   * dropped if it fills up.
+   * 
+   * @return the total number of events dropped because the queue was full.
+   */
+  public long getDroppedEvents() {
+    return m_events.getDropped();
     }
   
   }
@@ -0,0 +1,119 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+/** A bounded queue of input events waiting to be processed.
+ * 
+ * Pointer motion generates a stream of drag events, far more than can be
+ * painted. A drag event that arrives while the last event in the queue is
+ * also a drag replaces the position of the queued event instead of being
+ * added. Drag events always go to the window that received the preceding
+ * touch so the merged events share the same target. The number of samples
+ * merged into an event is available from TouchEvent.getSamples().
+ * 
+ * The queue has a fixed capacity. When it is full a new drag event is
+ * dropped (the release that follows carries the final position) and any
+ * other event replaces the oldest event in the queue. Dropped events are
+ * counted.
+ * 
+ * The TouchEvent instances used to hold the queued events are created when
+ * the queue is created and events are copied out of the queue so adding and
+ * removing events does not create new objects. Events may be added from any
+ * thread.
+ */
+class EventQueue {
+  //--- Constants
+  static final int DEFAULT_CAPACITY = 64; //! Default maximum number of queued events
+
+  //--- Instance variables
+  private TouchEvent[] m_events;  //! Storage for the queued events (a circular buffer)
+  private int          m_head;    //! Index of the oldest event
+  private int          m_size;    //! Number of events in the queue
+  private long         m_dropped; //! Total number of events dropped
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Constructor
+   * 
+   * @param capacity the maximum number of events to queue.
+   */
+  EventQueue(int capacity) {
+    m_events = new TouchEvent[Math.max(1, capacity)];
+    for(int index=0; index<m_events.length; index++)
+      m_events[index] = new TouchEvent(TouchEvent.GFX_EVENT_TOUCH, 0, 0, 0);
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Add an event to the queue
+   * 
+   * @param evType the type of the event.
+   * @param xpos the X co-ordinate of the event.
+   * @param ypos the Y co-ordinate of the event.
+   * @param time when the event occurred (in milliseconds).
+   * 
+   * @return true if the event was queued (or merged), false if it was
+   *         dropped.
+   */
+  synchronized boolean add(int evType, int xpos, int ypos, int time) {
+    // Merge consecutive drags
+    if((evType==TouchEvent.GFX_EVENT_DRAG)&&(m_size>0)) {
+      TouchEvent last = m_events[(m_head + m_size - 1) % m_events.length];
+      if(last.m_type==TouchEvent.GFX_EVENT_DRAG) {
+        last.m_xpos = xpos;
+        last.m_ypos = ypos;
+        last.m_time = time;
+        last.m_samples++;
+        return true;
+        }
+      }
+    // Apply the drop policy if we are full
+    if(m_size==m_events.length) {
+      m_dropped++;
+      if(evType==TouchEvent.GFX_EVENT_DRAG)
+        return false;
+      m_head = (m_head + 1) % m_events.length;
+      m_size--;
+      }
+    m_events[(m_head + m_size) % m_events.length].set(evType, xpos, ypos, time);
+    m_size++;
+    return true;
+    }
+
+  /** Remove the oldest event from the queue
+   * 
+   * @param event the TouchEvent to copy the oldest event into.
+   * 
+   * @return true if an event was removed, false if the queue is empty.
+   */
+  synchronized boolean poll(TouchEvent event) {
+    if(m_size==0)
+      return false;
+    event.copy(m_events[m_head]);
+    m_head = (m_head + 1) % m_events.length;
+    m_size--;
+    return true;
+    }
+
+  /** Determine if the queue is empty
+   * 
+   * @return true if there are no events waiting.
+   */
+  synchronized boolean isEmpty() {
+    return m_size==0;
+    }
+
+  /** Get the number of dropped events
+   * 
+   * @return the total number of events dropped because the queue was full.
+   */
+  synchronized long getDropped() {
+    return m_dropped;
+    }
+
+  }
@@ -7,7 +7,6 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
-import java.io.*;
 //--- Imports
 import java.nio.*;
 
@@ -17,12 +16,16 @@ import java.nio.*;
  * some additional metadata. The metadata describes which characters are
  * provided, their width and height and where they are located within the
  * Icon asset.
- *
+ * 
  */
 public class Font extends Asset {
   //--- Constants
   private static int MAX_CHAR = 255; //! Highest ASCII character code
   
+  //--- Measurement cache
+  private static final int CACHE_SIZE = 64;             //! Number of cached measurements (must be a power of 2)
+  private static final int CACHE_MASK = CACHE_SIZE - 1; //! Mask to convert a hash into a cache slot
+  
   //--- Instance variables
   private int   m_width;   //! Width of the largest character in pixels
   private int   m_height;  //! Height of the font in pixels
@@ -31,6 +34,10 @@ public class Font extends Asset {
   private int[] m_ypos;    //! Y co-ordinates for each character
   private Icon  m_icon;    //! The icon containing the font graphics
   
+  //--- Measurement cache
+  private String[] m_measured; //! Strings that have been measured
+  private int[]    m_measures; //! Width of each measured string
+  
   //-------------------------------------------------------------------------
   // Construction and initialisation
   //-------------------------------------------------------------------------
@@ -42,6 +49,8 @@ public class Font extends Asset {
    */
   Font(byte[] data, int offset, int size) {
     super();
+    m_measured = new String[CACHE_SIZE];
+    m_measures = new int[CACHE_SIZE];
     // Read and verify the font data
     ByteBuffer buffer = ByteBuffer.wrap(data, offset, size);
     buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -72,34 +81,109 @@ public class Font extends Asset {
         m_xpos[index] = m_xpos[defchar];
         m_ypos[index] = m_ypos[defchar];
         }
-    // Now load the Icon resource itself
-    m_icon = new Icon(data, offset + ((chars * 4) + 4), size - ((chars * 4) + 4));
-    // Save the raw data
-    if(m_icon.getData()!=null) {
-      m_data = new byte[size];
-      System.arraycopy(data, offset, m_data, 0, size);
-      }
+    // Save the raw data, the Icon shares it rather than keeping a copy
+    setData(data, offset, size);
+    m_icon = new Icon(getBuffer().duplicate().position((chars * 4) + 4).slice());
+    if(m_icon.getBuffer()==null)
+      setBuffer(null);
     }
 
   //-------------------------------------------------------------------------
   // Internal helpers
   //-------------------------------------------------------------------------
   
-  /** Convert a string to a sequence of ASCII bytes
+  /** Convert a single character to it's ASCII value
    * 
+   * Characters that cannot be represented in ASCII are replaced with '?',
+   * the same substitution made when encoding a String as US-ASCII.
+   * 
+   * @param ch the character to convert.
+   * 
+   * @return the ASCII value for the character.
    */
-  private byte[] toASCII(String string) {
-    // Treat null strings as empty
-    if(string==null)
-      return new byte[0];
-    // Convert to ASCII (falling back to empty if we can't)
-    try {
-      return string.getBytes("US-ASCII");
-      } 
-    catch (UnsupportedEncodingException e) {
-      // Hacky, but avoids exceptions
-      return new byte[0];
-      }
+  static int toASCII(char ch) {
+    return (ch>0x7F)?'?':ch;
+    }
+  
+  /** Find the next character in a string
+   * 
+   * A surrogate pair is treated as a single character (which toASCII()
+   * converts to a single '?'), the same as encoding a String as US-ASCII.
+   * All code that measures or draws strings must step through them with
+   * this method so they agree on the number of characters.
+   * 
+   * @param string the string being processed.
+   * @param index the index of the current character.
+   * 
+   * @return the index of the character following the current one.
+   */
+  static int nextChar(String string, int index) {
+    if(Character.isHighSurrogate(string.charAt(index))&&((index + 1)<string.length())&&Character.isLowSurrogate(string.charAt(index + 1)))
+      return index + 2;
+    return index + 1;
+    }
+  
+  /** Convert a string to a NUL terminated array of ASCII characters
+   * 
+   * The conversion matches encoding the String as US-ASCII but allows the
+   * caller to reuse the same array for each string.
+   * 
+   * @param string the string to convert.
+   * @param buffer the array to store the result in (may be null). A new
+   *               array is allocated if this one is not large enough.
+   * 
+   * @return the array containing the converted string.
+   */
+  static byte[] toASCII(String string, byte[] buffer) {
+    if((buffer==null)||(buffer.length<=string.length()))
+      buffer = new byte[Math.max(string.length() + 1, (buffer==null)?0:(buffer.length * 2))];
+    int length = 0;
+    for(int index=0; index<string.length(); index=nextChar(string, index))
+      buffer[length++] = (byte)toASCII(string.charAt(index));
+    buffer[length] = 0;
+    return buffer;
+    }
+  
+  //-------------------------------------------------------------------------
+  // Glyph information (used by software rendering)
+  //-------------------------------------------------------------------------
+  
+  /** Get the Icon containing the character images
+   * 
+   * @return the Icon asset containing the graphics for this font.
+   */
+  Icon getIcon() {
+    return m_icon;
+    }
+  
+  /** Get the width of a single character
+   * 
+   * @param ch the ASCII value of the character.
+   * 
+   * @return the width of the character in pixels.
+   */
+  int getCharWidth(int ch) {
+    return m_widths[ch & MAX_CHAR];
+    }
+  
+  /** Get the X co-ordinate of a character within the font Icon
+   * 
+   * @param ch the ASCII value of the character.
+   * 
+   * @return the X co-ordinate of the top left of the character.
+   */
+  int getCharX(int ch) {
+    return m_xpos[ch & MAX_CHAR];
+    }
+  
+  /** Get the Y co-ordinate of a character within the font Icon
+   * 
+   * @param ch the ASCII value of the character.
+   * 
+   * @return the Y co-ordinate of the top left of the character.
+   */
+  int getCharY(int ch) {
+    return m_ypos[ch & MAX_CHAR];
     }
   
   //-------------------------------------------------------------------------
@@ -127,7 +211,7 @@ public class Font extends Asset {
     }
   
   /** Get the width of the dimension.
-   *
+   * 
    * For a Font the width represents the width of the widest character.
    * 
    * @return the width of the dimension.
@@ -163,6 +247,50 @@ public class Font extends Asset {
     return new Dimension(m_widths[(int)ch], m_height);
     }
   
+  /** Get the width of a string
+   * 
+   * Recently measured strings are remembered so repeated measurement of
+   * the same text (during layout and painting) is cheap. This method does
+   * not allocate any memory.
+   * 
+   * @param string the String to get the width of.
+   * 
+   * @return the width of the string in pixels.
+   */
+  public synchronized int getStringWidth(String string) {
+    // Treat null strings as empty
+    if(string==null)
+      return 0;
+    // Check the cache
+    int slot = string.hashCode() & CACHE_MASK;
+    String cached = m_measured[slot];
+    if((cached==string)||string.equals(cached))
+      return m_measures[slot];
+    // Measure it and update the cache
+    int width = 0;
+    for(int index=0; index<string.length(); index=nextChar(string, index))
+      width = width + m_widths[toASCII(string.charAt(index))];
+    m_measured[slot] = string;
+    m_measures[slot] = width;
+    return width;
+    }
+  
+  /** Get the size of a string
+   * 
+   * Store the graphical space required to render a string in an existing
+   * IDimension instance. This method does not allocate any memory.
+   * 
+   * @param string the String to get the size for.
+   * @param size the IDimension to store the size in.
+   * 
+   * @return the IDimension passed in to the method.
+   */
+  public IDimension getStringSize(String string, IDimension size) {
+    size.setWidth(getStringWidth(string));
+    size.setHeight(m_height);
+    return size;
+    }
+  
   /** Get the size of a string
    * 
    * Return a Dimension instance describing the graphical space required to
@@ -173,13 +301,7 @@ public class Font extends Asset {
    * @return a Dimension instance describing the space taken by the string.
    */
   public Dimension getStringSize(String string) {
-    byte[] chars = toASCII(string);
-    int width = 0;
-    for(byte ch: chars) {
-      int index = ch & 0xFF;
-      width = width + m_widths[index];
-      }
-    return new Dimension(width, m_height);
+    return new Dimension(getStringWidth(string), m_height);
     }
   
   }
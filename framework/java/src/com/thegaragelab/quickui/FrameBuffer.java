@@ -0,0 +1,629 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.nio.*;
+import java.util.*;
+
+/** A software framebuffer.
+ * 
+ * This class implements the ISurface interface entirely in Java using an
+ * array of RGB565 pixels as the display. The drawing operations mirror the
+ * common driver implementations (see drivers/common) so the results are the
+ * same, pixel for pixel, as those produced by the native driver. It allows
+ * the framework to run without the native library (for testing or headless
+ * operation).
+ */
+public class FrameBuffer implements ISurface {
+  //--- Internal constants
+  private static final int IMAGE_HEADER = 4; //! Size of the image header in bytes
+
+  //--- Instance variables
+  private int     m_width;   //! Width of the framebuffer in pixels
+  private int     m_height;  //! Height of the framebuffer in pixels
+  private short[] m_pixels;  //! The pixel data (RGB565, row by row)
+  private int     m_clipX1;  //! Left edge of the clipping region
+  private int     m_clipY1;  //! Top edge of the clipping region
+  private int     m_clipX2;  //! Right edge of the clipping region (inclusive)
+  private int     m_clipY2;  //! Bottom edge of the clipping region (inclusive)
+  private int     m_originX; //! X co-ordinate of the top left pixel
+  private int     m_originY; //! Y co-ordinate of the top left pixel
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Constructor with a width and height
+   * 
+   * @param width the width of the framebuffer in pixels.
+   * @param height the height of the framebuffer in pixels.
+   */
+  public FrameBuffer(int width, int height) {
+    m_width = width;
+    m_height = height;
+    m_pixels = new short[width * height];
+    // Set the initial clipping to the full buffer
+    m_clipX2 = width - 1;
+    m_clipY2 = height - 1;
+    }
+
+  //-------------------------------------------------------------------------
+  // Internal helpers
+  //-------------------------------------------------------------------------
+
+  /** Set the color of a single pixel, applying the clipping region.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  private void plot(int x, int y, int color) {
+    x = x - m_originX;
+    y = y - m_originY;
+    if((x<m_clipX1)||(x>m_clipX2)||(y<m_clipY1)||(y>m_clipY2))
+      return;
+    m_pixels[(y * m_width) + x] = (short)color;
+    }
+
+  /** Fill a region with a color.
+   * 
+   * The co-ordinates are inclusive and may be given in any order (as they
+   * are for gfx_common_FillRegion()).
+   * 
+   * @param x1 the X co-ordinate of the first corner.
+   * @param y1 the Y co-ordinate of the first corner.
+   * @param x2 the X co-ordinate of the opposite corner.
+   * @param y2 the Y co-ordinate of the opposite corner.
+   * @param color the native color to fill the region with.
+   */
+  private void fillRegion(int x1, int y1, int x2, int y2, int color) {
+    x1 = x1 - m_originX;
+    x2 = x2 - m_originX;
+    y1 = y1 - m_originY;
+    y2 = y2 - m_originY;
+    int left = Math.max(Math.min(x1, x2), m_clipX1);
+    int right = Math.min(Math.max(x1, x2), m_clipX2);
+    int top = Math.max(Math.min(y1, y2), m_clipY1);
+    int bottom = Math.min(Math.max(y1, y2), m_clipY2);
+    if((left>right)||(top>bottom))
+      return;
+    for(int y=top; y<=bottom; y++)
+      Arrays.fill(m_pixels, (y * m_width) + left, (y * m_width) + right + 1, (short)color);
+    }
+
+  /** Get the number of bytes in a single line of an image
+   * 
+   * @param image the image to examine.
+   * @param bpp the number of bits per pixel.
+   * 
+   * @return the number of bytes used for each line of the image.
+   */
+  private static int lineLength(Image image, int bpp) {
+    return (((image.getWidth() * bpp) - 1) / 8) + 1;
+    }
+
+  /** Get the value of a single pixel from a monochrome image
+   * 
+   * This mirrors maskGetPixel() - pixels outside the image are never set.
+   * 
+   * @param image the monochrome image to query.
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * 
+   * @return true if the pixel is set.
+   */
+  private static boolean getMonoPixel(Image image, int x, int y) {
+    if((x>=image.getWidth())||(y>=image.getHeight()))
+      return false;
+    int offset = IMAGE_HEADER + (y * lineLength(image, 1)) + (x / 8);
+    return (image.getBuffer().get(offset) & (0x80 >> (x % 8)))!=0;
+    }
+
+  /** Clamp the width (or height) of the source area of an image.
+   * 
+   * This mirrors the adjustment made by the common drivers. The values are
+   * treated as 8 bit unsigned quantities.
+   * 
+   * @param start the starting co-ordinate in the image.
+   * @param size the requested size.
+   * @param limit the size of the image.
+   * 
+   * @return the adjusted size.
+   */
+  private static int clampSource(int start, int size, int limit) {
+    if((start + size)>limit)
+      size = (limit - 1 - start) & 0xFF;
+    return size;
+    }
+
+  /** Draw a portion of a monochrome image (see gfx_common_DrawIcon())
+   */
+  private void drawIcon(int x, int y, Image icon, int sx, int sy, int w, int h, Image mask, int color) {
+    w = clampSource(sx, w, icon.getWidth());
+    h = clampSource(sy, h, icon.getHeight());
+    for(int dy=0; dy<h; dy++) {
+      for(int dx=0; dx<w; dx++) {
+        if(getMonoPixel(icon, sx + dx, sy + dy)&&((mask==null)||getMonoPixel(mask, sx + dx, sy + dy)))
+          plot(x + dx, y + dy, color);
+        }
+      }
+    }
+
+  /** Draw a portion of a 4 bit image (see gfx_common_DrawImage4())
+   */
+  private void drawImage4(int x, int y, Image image, int sx, int sy, int w, int h, Image mask, Palette palette) {
+    w = clampSource(sx, w, image.getWidth());
+    h = clampSource(sy, h, image.getHeight());
+    ByteBuffer data = image.getBuffer();
+    int bpl = lineLength(image, 4);
+    for(int dy=0; dy<h; dy++) {
+      for(int dx=0; dx<w; dx++) {
+        if((mask!=null)&&!getMonoPixel(mask, sx + dx, sy + dy))
+          continue;
+        int offset = IMAGE_HEADER + (bpl * (sy + dy)) + ((sx + dx) / 2);
+        if(offset>=data.limit())
+          continue;
+        int index = (((sx + dx) % 2)==0)?((data.get(offset)>>4) & 0x0F):(data.get(offset) & 0x0F);
+        plot(x + dx, y + dy, palette.getColor(index).getNativeFormat());
+        }
+      }
+    }
+
+  /** Draw a portion of a 16 bit image (see gfx_common_DrawImage16())
+   */
+  private void drawImage16(int x, int y, Image image, int sx, int sy, int w, int h, Image mask) {
+    w = clampSource(sx, w, image.getWidth());
+    h = clampSource(sy, h, image.getHeight());
+    ByteBuffer data = image.getBuffer();
+    int bpl = lineLength(image, 16);
+    for(int dy=0; dy<h; dy++) {
+      for(int dx=0; dx<w; dx++) {
+        if((mask!=null)&&!getMonoPixel(mask, sx + dx, sy + dy))
+          continue;
+        int offset = IMAGE_HEADER + (bpl * (sy + dy)) + ((sx + dx) * 2);
+        if((offset + 1)>=data.limit())
+          continue;
+        plot(x + dx, y + dy, (data.get(offset) & 0xFF) | ((data.get(offset + 1) & 0xFF) << 8));
+        }
+      }
+    }
+
+  /** Draw a single character from a font
+   * 
+   * @param font the font to use.
+   * @param x the X co-ordinate for the top left of the character.
+   * @param y the Y co-ordinate for the top left of the character.
+   * @param color the native color to draw the character in.
+   * @param ch the ASCII value of the character.
+   * 
+   * @return the width of the character drawn in pixels.
+   */
+  private int drawGlyph(Font font, int x, int y, int color, int ch) {
+    drawIcon(x, y, font.getIcon(), font.getCharX(ch), font.getCharY(ch), font.getCharWidth(ch), font.getHeight(), null, color);
+    return font.getCharWidth(ch);
+    }
+
+  //-------------------------------------------------------------------------
+  // Framebuffer specific operations
+  //-------------------------------------------------------------------------
+
+  /** Get the raw pixel data
+   * 
+   * @return the array of RGB565 pixels backing this framebuffer. Pixels are
+   *         stored row by row with no padding.
+   */
+  public short[] getPixels() {
+    return m_pixels;
+    }
+
+  /** Get the color of a single pixel
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * 
+   * @return the RGB565 value of the pixel or 0 if the co-ordinates are
+   *         outside the framebuffer.
+   */
+  public int getPixel(int x, int y) {
+    if((x<0)||(x>=m_width)||(y<0)||(y>=m_height))
+      return 0;
+    return m_pixels[(y * m_width) + x] & 0xFFFF;
+    }
+
+  /** Set the origin of the framebuffer
+   * 
+   * The origin is the co-ordinate of the top left pixel. All drawing
+   * operations (including setting the clipping region) are offset by the
+   * origin, this allows a framebuffer to represent a portion of a larger
+   * display.
+   * 
+   * @param origin the new origin.
+   */
+  public void setOrigin(IPoint origin) {
+    m_originX = origin.getX();
+    m_originY = origin.getY();
+    }
+  
+  /** Copy the contents of another framebuffer
+   * 
+   * The source framebuffer is copied in it's entirety (the origin of the
+   * source is ignored), subject to the clipping region of this framebuffer.
+   * 
+   * @param point the location to place the top left corner of the source.
+   * @param source the FrameBuffer to copy from.
+   */
+  public void drawFrameBuffer(IPoint point, FrameBuffer source) {
+    int x = point.getX() - m_originX, y = point.getY() - m_originY;
+    int left = Math.max(x, m_clipX1);
+    int right = Math.min(x + source.m_width - 1, m_clipX2);
+    int top = Math.max(y, m_clipY1);
+    int bottom = Math.min(y + source.m_height - 1, m_clipY2);
+    if((left>right)||(top>bottom))
+      return;
+    for(int row=top; row<=bottom; row++)
+      System.arraycopy(source.m_pixels, ((row - y) * source.m_width) + (left - x), m_pixels, (row * m_width) + left, right - left + 1);
+    }
+
+  /** Copy part of this framebuffer into another
+   * 
+   * The clipping region is ignored, pixels in the target that lie outside
+   * of this framebuffer are left unchanged.
+   * 
+   * @param point the location of the top left corner of the area to copy.
+   * @param target the FrameBuffer to copy into (the origin of the target is
+   *               ignored), the size of the target determines the size of
+   *               the area copied.
+   */
+  public void readFrameBuffer(IPoint point, FrameBuffer target) {
+    int x = point.getX() - m_originX, y = point.getY() - m_originY;
+    int left = Math.max(x, 0);
+    int right = Math.min(x + target.m_width - 1, m_width - 1);
+    int top = Math.max(y, 0);
+    int bottom = Math.min(y + target.m_height - 1, m_height - 1);
+    if((left>right)||(top>bottom))
+      return;
+    for(int row=top; row<=bottom; row++)
+      System.arraycopy(m_pixels, (row * m_width) + left, target.m_pixels, ((row - y) * target.m_width) + (left - x), right - left + 1);
+    }
+
+  //-------------------------------------------------------------------------
+  // Implementation of IDimension
+  //-------------------------------------------------------------------------
+
+  /** Get the width of the framebuffer.
+   * 
+   * @return the width of the framebuffer in pixels.
+   */
+  public int getWidth() {
+    return m_width;
+    }
+
+  /** Set the width of the framebuffer.
+   * 
+   * The size of a framebuffer cannot be changed after creation.
+   * 
+   * @param w the new width of the framebuffer.
+   */
+  public void setWidth(int w) {
+    // Do nothing
+    }
+
+  /** Get the height of the framebuffer.
+   * 
+   * @return the height of the framebuffer in pixels.
+   */
+  public int getHeight() {
+    return m_height;
+    }
+
+  /** Set the height of the framebuffer.
+   * 
+   * The size of a framebuffer cannot be changed after creation.
+   * 
+   * @param h the new height of the framebuffer.
+   */
+  public void setHeight(int h) {
+    // Do nothing
+    }
+
+  //-------------------------------------------------------------------------
+  // Implementation of ISurface
+  //-------------------------------------------------------------------------
+
+  /** Begin a paint operation.
+   * 
+   * Updates are applied immediately so there is nothing to do here.
+   */
+  public void beginPaint() {
+    // Do nothing
+    }
+
+  /** End a paint operation.
+   * 
+   * Updates are applied immediately so there is nothing to do here.
+   */
+  public void endPaint() {
+    // Do nothing
+    }
+
+  /** Set the clipping region for future operations
+   * 
+   * As with gfx_common_SetClip() any edge that falls outside of the
+   * framebuffer is ignored and the previous value retained.
+   * 
+   * @param rect the Rectangle describing the clipping region.
+   */
+  public void setClip(IRectangle rect) {
+    int x1 = rect.getX() - m_originX;
+    int y1 = rect.getY() - m_originY;
+    int x2 = x1 + rect.getWidth() - 1;
+    int y2 = y1 + rect.getHeight() - 1;
+    if((x1>=0)&&(x1<m_width))
+      m_clipX1 = x1;
+    if((x2>=0)&&(x2<m_width))
+      m_clipX2 = x2;
+    if((y1>=0)&&(y1<m_height))
+      m_clipY1 = y1;
+    if((y2>=0)&&(y2<m_height))
+      m_clipY2 = y2;
+    }
+
+  /** Display a single pixel.
+   * 
+   * @param point the Point at which to display the pixel.
+   * @param color the Color to set the pixel to.
+   */
+  public void putPixel(IPoint point, Color color) {
+    putPixel(point.getX(), point.getY(), color.getNativeFormat());
+    }
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param rect the Rectangle describing the area to fill.
+   * @param color the Color to fill the rectangle with.
+   */
+  public void fillRect(IRectangle rect, Color color) {
+    fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
+    }
+
+  /** Draw a line from one point to another
+   * 
+   * @param start the starting point for the line.
+   * @param end the ending point for the line.
+   * @param color the color to draw the line in.
+   */
+  public void drawLine(IPoint start, IPoint end, Color color) {
+    drawLine(start.getX(), start.getY(), end.getX(), end.getY(), color.getNativeFormat());
+    }
+
+  /** Draw a box around a rectangle.
+   * 
+   * @param rect the Rectangle to draw the box around.
+   * @param color the Color to draw the box in.
+   */
+  public void drawBox(IRectangle rect, Color color) {
+    drawBox(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(), color.getNativeFormat());
+    }
+
+  /** Draw an Image to the screen.
+   * 
+   * @param point the Point specifying the top left corner of the icon.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  public void drawImage(IPoint point, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
+    if(point==null)
+      return;
+    drawImage(point.getX(), point.getY(), image, source, mask, color, palette);
+    }
+
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param point the location to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  public void drawChar(Font font, IPoint point, Color color, char ch) {
+    drawChar(font, point.getX(), point.getY(), color, ch);
+    }
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param point the location to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  public void drawString(Font font, IPoint point, Color color, String string) {
+    drawString(font, point.getX(), point.getY(), color, string);
+    }
+
+  //-------------------------------------------------------------------------
+  // Primitive versions of the drawing operations
+  //-------------------------------------------------------------------------
+
+  /** Display a single pixel.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  public void putPixel(int x, int y, int color) {
+    plot(x, y, color);
+    }
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to fill the rectangle with.
+   */
+  public void fillRect(int x, int y, int width, int height, int color) {
+    fillRegion(x, y, x + width - 1, y + height - 1, color);
+    }
+
+  /** Draw a line from one point to another
+   * 
+   * This is a direct translation of gfx_common_DrawLine() and produces
+   * exactly the same set of pixels.
+   * 
+   * @param x1 the X co-ordinate of the starting point.
+   * @param y1 the Y co-ordinate of the starting point.
+   * @param x2 the X co-ordinate of the ending point.
+   * @param y2 the Y co-ordinate of the ending point.
+   * @param pixel the native color to draw the line in.
+   */
+  public void drawLine(int x1, int y1, int x2, int y2, int pixel) {
+    // Do special cases
+    if((x1==x2)||(y1==y2)) {
+      fillRegion(x1, y1, x2, y2, pixel);
+      return;
+      }
+    // Make sure X moves in a positive direction
+    if(x2<x1) {
+      int swap = x1;
+      x1 = x2;
+      x2 = swap;
+      swap = y1;
+      y1 = y2;
+      y2 = swap;
+      }
+    int dx = x2 - x1;
+    int dy = (y2>y1)?(y2 - y1):(y1 - y2);
+    int err = (2 * dy) - dx;
+    int y = Math.min(y1, y2);
+    plot(x1, y1, pixel);
+    for(int x=x1 + 1; x<=x2; x++) {
+      if(err>0) {
+        y = y + 1;
+        err = err + (2 * dy) - (2 * dx);
+        }
+      else
+        err = err + (2 * dy);
+      if(y2>y1)
+        plot(x, y, pixel);
+      else
+        plot(x, m_height - y - 1, pixel);
+      }
+    }
+
+  /** Draw a box around a rectangle.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param pixel the native color to draw the box in.
+   */
+  public void drawBox(int x, int y, int width, int height, int pixel) {
+    int x1 = x, y1 = y;
+    int x2 = x + width - 1, y2 = y + height - 1;
+    // Do the horizontal lines
+    int delta = (x2>x1)?1:-1;
+    for(int step=x1; step!=(x2 + delta); step+=delta) {
+      plot(step, y1, pixel);
+      plot(step, y2, pixel);
+      }
+    // Do the vertical lines
+    delta = (y2>y1)?1:-1;
+    for(int step=y1 + delta; step!=(y2 + delta); step+=delta) {
+      plot(x1, step, pixel);
+      plot(x2, step, pixel);
+      }
+    }
+
+  /** Draw an Image to the screen.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  public void drawImage(int x, int y, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
+    // Check parameters
+    if((image==null)||(image.getBuffer()==null))
+      return;
+    if(color==null)
+      color = Color.BLACK;
+    // The source area is passed to the driver as unsigned bytes
+    int sx = 0, sy = 0, w = 0xFF, h = 0xFF;
+    if(source!=null) {
+      sx = source.getX() & 0xFF;
+      sy = source.getY() & 0xFF;
+      w = source.getWidth() & 0xFF;
+      h = source.getHeight() & 0xFF;
+      }
+    // The mask must be a monochrome image the same size as the source
+    if(mask!=null) {
+      if((mask.getBitsPerPixel()!=1)||(mask.getWidth()!=image.getWidth())||(mask.getHeight()!=image.getHeight()))
+        return;
+      }
+    // Draw the image
+    switch(image.getBitsPerPixel()) {
+      case 1:
+        drawIcon(x, y, image, sx, sy, w, h, mask, color.getNativeFormat());
+        break;
+      case 4:
+        if(palette!=null)
+          drawImage4(x, y, image, sx, sy, w, h, mask, palette);
+        break;
+      case 16:
+        drawImage16(x, y, image, sx, sy, w, h, mask);
+        break;
+      }
+    }
+
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the character at.
+   * @param y the Y co-ordinate to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  public void drawChar(Font font, int x, int y, Color color, char ch) {
+    if((font==null)||(font.getBuffer()==null))
+      return;
+    drawGlyph(font, x, y, color.getNativeFormat(), ch & 0xFF);
+    }
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  public void drawString(Font font, int x, int y, Color color, String string) {
+    if((font==null)||(font.getBuffer()==null)||(string==null))
+      return;
+    // Skip the whole string if it is above or below the clipping region
+    if(((y - m_originY + font.getHeight() - 1)<m_clipY1)||((y - m_originY)>m_clipY2))
+      return;
+    int pixel = color.getNativeFormat();
+    for(int index=0; index<string.length(); index=Font.nextChar(string, index)) {
+      int ch = Font.toASCII(string.charAt(index));
+      // The native driver treats the string as NUL terminated
+      if((ch==0)||((x - m_originX)>m_clipX2))
+        break;
+      // Only draw characters that are inside the clipping region
+      if((x - m_originX + font.getCharWidth(ch) - 1)<m_clipX1)
+        x = x + font.getCharWidth(ch);
+      else
+        x = x + drawGlyph(font, x, y, pixel, ch);
+      }
+    }
+
+  }
@@ -0,0 +1,195 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.util.*;
+
+/** Collects timing information about the frames drawn by the Application.
+ * 
+ * A frame covers all the work done between two repaints - processing
+ * events, triggering timers, updating windows and finally the repaint
+ * itself. The time spent in each phase is recorded for the most recent
+ * frame and the total time for recent frames is kept so the distribution
+ * of frame times can be examined.
+ * 
+ * A frame is counted as dropped when it takes longer than the frame
+ * interval set on the Application (one for each interval it overruns). A
+ * frame is counted as skipped when a repaint was required but was put off
+ * until the next frame interval so several changes could be painted at
+ * once.
+ * 
+ * All times are reported in microseconds. The statistics may be read from
+ * any thread.
+ */
+public class FrameStats {
+  //--- Phases of a frame
+  public static final int PHASE_EVENTS  = 0; //! Processing input events
+  public static final int PHASE_TIMERS  = 1; //! Triggering timers
+  public static final int PHASE_UPDATE  = 2; //! Updating windows
+  public static final int PHASE_REPAINT = 3; //! Repainting the display
+  public static final int PHASE_COUNT   = 4; //! Number of phases
+
+  //--- Constants
+  public static final int HISTORY = 128; //! Number of frames kept for the percentiles
+
+  //--- Instance variables
+  private long[] m_phases;  //! Time spent in each phase of the current frame (nanoseconds)
+  private long[] m_last;    //! Time spent in each phase of the last frame (nanoseconds)
+  private long[] m_history; //! Total time for recent frames (nanoseconds)
+  private long[] m_sorted;  //! Working copy of the history used to find percentiles
+  private int    m_next;    //! Next entry to use in the history
+  private int    m_count;   //! Number of entries used in the history
+  private long   m_frames;  //! Total number of frames recorded
+  private long   m_dropped; //! Total number of dropped frames
+  private long   m_skipped; //! Total number of skipped repaints
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Default constructor
+   */
+  FrameStats() {
+    m_phases = new long[PHASE_COUNT];
+    m_last = new long[PHASE_COUNT];
+    m_history = new long[HISTORY];
+    m_sorted = new long[HISTORY];
+    }
+
+  //-------------------------------------------------------------------------
+  // Recording (used by the Application)
+  //-------------------------------------------------------------------------
+
+  /** Add time to a phase of the current frame
+   * 
+   * @param phase the phase the time was spent in.
+   * @param nanos the time spent (in nanoseconds).
+   */
+  synchronized void addPhase(int phase, long nanos) {
+    m_phases[phase] = m_phases[phase] + nanos;
+    }
+
+  /** Discard the time recorded for the current frame
+   * 
+   * Used when the work done did not lead to a repaint.
+   */
+  synchronized void clearPhases() {
+    Arrays.fill(m_phases, 0);
+    }
+
+  /** Finish the current frame
+   * 
+   * @param budget the time allowed for a single frame (in nanoseconds). A
+   *               budget of 0 means frames are never dropped.
+   */
+  synchronized void endFrame(long budget) {
+    long total = 0;
+    for(int phase=0; phase<PHASE_COUNT; phase++) {
+      total = total + m_phases[phase];
+      m_last[phase] = m_phases[phase];
+      m_phases[phase] = 0;
+      }
+    m_history[m_next] = total;
+    m_next = (m_next + 1) % HISTORY;
+    m_count = Math.min(m_count + 1, HISTORY);
+    m_frames++;
+    if((budget>0)&&(total>budget))
+      m_dropped = m_dropped + (total / budget);
+    }
+
+  /** Record a repaint that was put off until the next frame
+   */
+  synchronized void skipFrame() {
+    m_skipped++;
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Get the number of frames drawn
+   * 
+   * @return the total number of frames recorded.
+   */
+  public synchronized long getFrameCount() {
+    return m_frames;
+    }
+
+  /** Get the number of dropped frames
+   * 
+   * @return the total number of frame intervals missed because a frame
+   *         took longer than the frame interval.
+   */
+  public synchronized long getDroppedFrames() {
+    return m_dropped;
+    }
+
+  /** Get the number of skipped repaints
+   * 
+   * @return the total number of times a repaint was put off until the next
+   *         frame interval.
+   */
+  public synchronized long getSkippedFrames() {
+    return m_skipped;
+    }
+
+  /** Get the time spent in a phase of the last frame
+   * 
+   * @param phase the phase to get the time for (PHASE_EVENTS, etc).
+   * 
+   * @return the time spent in the phase (in microseconds).
+   */
+  public synchronized long getPhaseTime(int phase) {
+    if((phase<0)||(phase>=PHASE_COUNT))
+      return 0;
+    return m_last[phase] / 1000;
+    }
+
+  /** Get a percentile of the recent frame times
+   * 
+   * @param percent the percentile required (0 to 100).
+   * 
+   * @return the frame time (in microseconds) that the given percentage of
+   *         recent frames did not exceed or 0 if no frames have been
+   *         recorded.
+   */
+  public synchronized long getPercentile(int percent) {
+    if(m_count==0)
+      return 0;
+    System.arraycopy(m_history, 0, m_sorted, 0, m_count);
+    Arrays.sort(m_sorted, 0, m_count);
+    int index = ((Math.max(0, Math.min(100, percent)) * m_count) + 99) / 100;
+    return m_sorted[Math.max(0, index - 1)] / 1000;
+    }
+
+  /** Get the median of the recent frame times
+   * 
+   * @return the median frame time (in microseconds).
+   */
+  public long getMedian() {
+    return getPercentile(50);
+    }
+
+  /** Get the longest of the recent frame times
+   * 
+   * @return the longest frame time (in microseconds).
+   */
+  public long getMaximum() {
+    return getPercentile(100);
+    }
+
+  /** Reset all statistics
+   */
+  public synchronized void reset() {
+    Arrays.fill(m_phases, 0);
+    Arrays.fill(m_last, 0);
+    m_next = 0;
+    m_count = 0;
+    m_frames = 0;
+    m_dropped = 0;
+    m_skipped = 0;
+    }
+
+  }
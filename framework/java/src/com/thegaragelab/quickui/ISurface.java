@@ -89,4 +89,81 @@ public interface ISurface extends IDimension {
    */
   public void drawString(Font font, IPoint point, Color color, String string);
 
+  //-------------------------------------------------------------------------
+  // Primitive versions of the drawing operations
+  //
+  // These take co-ordinates (and colors in the native RGB565 format) as
+  // integers so drawing does not require any objects to be created.
+  //-------------------------------------------------------------------------
+
+  /** Display a single pixel.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  public void putPixel(int x, int y, int color);
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to fill the rectangle with.
+   */
+  public void fillRect(int x, int y, int width, int height, int color);
+  
+  /** Draw a line from one point to another 
+   * 
+   * @param x1 the X co-ordinate of the starting point.
+   * @param y1 the Y co-ordinate of the starting point.
+   * @param x2 the X co-ordinate of the ending point.
+   * @param y2 the Y co-ordinate of the ending point.
+   * @param color the native color to draw the line in.
+   */
+  public void drawLine(int x1, int y1, int x2, int y2, int color);
+  
+  /** Draw a box around a rectangle.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to draw the box in.
+   */
+  public void drawBox(int x, int y, int width, int height, int color);
+
+  /** Draw an Image to the screen.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  public void drawImage(int x, int y, Image image, IRectangle source, Icon mask, Color color, Palette palette);
+
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the character at.
+   * @param y the Y co-ordinate to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  public void drawChar(Font font, int x, int y, Color color, char ch);
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  public void drawString(Font font, int x, int y, Color color, String string);
+
   }
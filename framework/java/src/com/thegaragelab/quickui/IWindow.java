@@ -35,6 +35,28 @@ public interface IWindow extends IRectangle, ISurface {
    */
   public void setPreferredSize();
   
+  /** Start a group of changes to the position and size of the window
+   * 
+   * The changes are applied when the matching call to endUpdate() is made.
+   */
+  public void beginUpdate();
+  
+  /** Finish a group of changes to the position and size of the window
+   * 
+   * Only the areas the window covered before and after the changes are
+   * repainted.
+   */
+  public void endUpdate();
+  
+  /** Change the position and size of the window in a single operation
+   * 
+   * @param x the new X co-ordinate (relative to the parent).
+   * @param y the new Y co-ordinate (relative to the parent).
+   * @param width the new width.
+   * @param height the new height.
+   */
+  public void setBounds(int x, int y, int width, int height);
+  
   /** Get the parent of this Window
    * 
    * @return the Window instance that represents the parent of this window.
@@ -53,6 +75,28 @@ public interface IWindow extends IRectangle, ISurface {
    */
   public abstract boolean isDirty();
 
+  /** Mark part of the window as needing to be repainted
+   * 
+   * Areas passed to successive calls are combined until the window is next
+   * painted. Only the combined area is repainted, use getDirtyRegion()
+   * during onPaint() to skip work outside of it.
+   * 
+   * @param rect the area to repaint (in window co-ordinates) or null to
+   *             repaint the entire window.
+   */
+  public abstract void invalidate(IRectangle rect);
+
+  /** Get the area of the window that needs to be repainted
+   * 
+   * While the window is being painted this is the area being painted,
+   * anything drawn outside of it will not be visible.
+   * 
+   * @return the area (in window co-ordinates) that needs repainting. The
+   *         area is empty if nothing needs to be repainted. The instance
+   *         is reused and must not be modified.
+   */
+  public abstract IRectangle getDirtyRegion();
+
   /** Set the visibility of the window
    * 
    * @param visible true if the window should be visible, false if not
@@ -77,6 +121,21 @@ public interface IWindow extends IRectangle, ISurface {
    */
   public abstract boolean getEraseBackground();
   
+  /** Indicate that the window paints every pixel inside it's area.
+   * 
+   * Windows that are opaque hide anything beneath them so the framework
+   * can avoid painting those windows.
+   * 
+   * @param opaque true if the Window covers it's entire area when painted.
+   */
+  public abstract void setOpaque(boolean opaque);
+  
+  /** Determine if the window paints every pixel inside it's area.
+   * 
+   * @return true if the window is opaque.
+   */
+  public abstract boolean isOpaque();
+  
   /** Allow the window to receive touch events
    * 
    * @param accept true if this Window should accept touch events.
@@ -135,7 +194,9 @@ public interface IWindow extends IRectangle, ISurface {
    * do anything with these events.
    * 
    * @param evType the type of the event
-   * @param where the location of the event (in window co-ordinates)
+   * @param where the location of the event (in window co-ordinates). The
+   *              instance is reused, make a copy if it is needed after
+   *              the call returns.
    */
   public abstract void onTouchEvent(int evType, IPoint where);
 
@@ -7,6 +7,9 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
+//--- Imports
+import java.nio.*;
+
 /** Represents an icon asset
  * 
  * For QuickUI an icon is a monochrome image where each pixel has one of
@@ -33,4 +36,12 @@ public class Icon extends Image {
     super(data, offset, size);
     }
   
+  /** Constructor
+   * 
+   * @param data the raw data for the asset (shared, not copied).
+   */
+  Icon(ByteBuffer data) {
+    super(data);
+    }
+  
   }
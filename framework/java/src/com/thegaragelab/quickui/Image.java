@@ -34,8 +34,33 @@ public class Image extends Asset implements IDimension {
    */
   Image(byte[] data, int offset, int size) {
     super();
-    // Verify the data
-    ByteBuffer buffer = ByteBuffer.wrap(data, offset, size);
+    // Verify the data and save away a copy of it
+    if(readHeader(ByteBuffer.wrap(data, offset, size)))
+      setData(data, offset, size);
+    }
+  
+  /** Constructor
+   * 
+   * Used for images embedded in other assets, the data is shared rather
+   * than copied.
+   * 
+   * @param data the raw data for the asset (from index 0 to the limit).
+   */
+  Image(ByteBuffer data) {
+    super();
+    if(readHeader(data.duplicate()))
+      setBuffer(data);
+    }
+  
+  /** Read and verify the image header
+   * 
+   * @param buffer the buffer containing the image data (from the current
+   *               position to the limit).
+   * 
+   * @return true if the header is valid and matches the size of the data.
+   */
+  private boolean readHeader(ByteBuffer buffer) {
+    int size = buffer.remaining();
     buffer.order(ByteOrder.LITTLE_ENDIAN);
     m_width = (buffer.get() & 0xFF) + 1;
     m_height = (buffer.get() & 0xFF) + 1;
@@ -44,11 +69,7 @@ public class Image extends Asset implements IDimension {
     // Determine the size of the data we expect
     int expected = ((m_width * m_bpp) / 8) + ((((m_width * m_bpp) % 8)==0)?0:1);
     expected = expected * m_height;
-    if(size!=(expected + 4))
-      return;
-    // Save away the raw data
-    m_data = new byte[size];
-    System.arraycopy(data, offset, m_data, 0, size);
+    return size==(expected + 4);
     }
   
   //-------------------------------------------------------------------------
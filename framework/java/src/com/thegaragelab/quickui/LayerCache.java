@@ -0,0 +1,144 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.util.*;
+
+/** Manages the offscreen buffers used by cached containers.
+ * 
+ * Each cached Container may have a FrameBuffer holding a copy of it's
+ * rendered contents. The total memory used by all buffers is limited to a
+ * budget, when a new buffer would exceed the budget the least recently
+ * used buffers are discarded to make room.
+ */
+class LayerCache {
+  //--- Constants
+  static final int DEFAULT_BUDGET = 1024 * 1024; //! Default budget (in bytes)
+
+  //--- Internal constants
+  private static final int BYTES_PER_PIXEL = 2; //! Size of a single RGB565 pixel
+
+  //--- Instance variables
+  private LinkedHashMap<Container, FrameBuffer> m_layers; //! Buffers in LRU order
+  private int                                   m_budget; //! Maximum number of bytes to use
+  private int                                   m_used;   //! Number of bytes currently in use
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Default constructor
+   */
+  LayerCache() {
+    // Use access order so the eldest entry is the least recently used
+    m_layers = new LinkedHashMap<Container, FrameBuffer>(16, 0.75f, true);
+    m_budget = DEFAULT_BUDGET;
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Determine the memory used by a buffer
+   * 
+   * @param width the width of the buffer in pixels.
+   * @param height the height of the buffer in pixels.
+   * 
+   * @return the number of bytes required for the buffer.
+   */
+  private static int bufferSize(int width, int height) {
+    return width * height * BYTES_PER_PIXEL;
+    }
+
+  /** Discard least recently used buffers
+   * 
+   * @param required the number of bytes that must be available.
+   */
+  private void evict(int required) {
+    Iterator<Map.Entry<Container, FrameBuffer>> entries = m_layers.entrySet().iterator();
+    while(((m_used + required)>m_budget)&&entries.hasNext()) {
+      Map.Entry<Container, FrameBuffer> entry = entries.next();
+      m_used = m_used - bufferSize(entry.getValue().getWidth(), entry.getValue().getHeight());
+      entries.remove();
+      }
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Get the memory budget
+   * 
+   * @return the maximum number of bytes used by all buffers.
+   */
+  int getBudget() {
+    return m_budget;
+    }
+
+  /** Set the memory budget
+   * 
+   * Reducing the budget will discard buffers until the new budget is met.
+   * 
+   * @param budget the maximum number of bytes to use for all buffers.
+   */
+  void setBudget(int budget) {
+    m_budget = Math.max(0, budget);
+    evict(0);
+    }
+
+  /** Get the memory currently in use
+   * 
+   * @return the number of bytes used by all buffers.
+   */
+  int getUsed() {
+    return m_used;
+    }
+
+  /** Get the buffer for a container
+   * 
+   * The buffer will be marked as most recently used.
+   * 
+   * @param container the Container to get the buffer for.
+   * 
+   * @return the FrameBuffer for the container or null if it has none.
+   */
+  FrameBuffer get(Container container) {
+    return m_layers.get(container);
+    }
+
+  /** Allocate a buffer for a container
+   * 
+   * Any existing buffer for the container is replaced.
+   * 
+   * @param container the Container to allocate a buffer for.
+   * @param width the width of the buffer in pixels.
+   * @param height the height of the buffer in pixels.
+   * 
+   * @return the new FrameBuffer or null if the buffer would not fit in the
+   *         budget.
+   */
+  FrameBuffer allocate(Container container, int width, int height) {
+    remove(container);
+    int size = bufferSize(width, height);
+    if((width<=0)||(height<=0)||(size>m_budget))
+      return null;
+    evict(size);
+    FrameBuffer buffer = new FrameBuffer(width, height);
+    m_layers.put(container, buffer);
+    m_used = m_used + size;
+    return buffer;
+    }
+
+  /** Release the buffer for a container
+   * 
+   * @param container the Container to release the buffer for.
+   */
+  void remove(Container container) {
+    FrameBuffer buffer = m_layers.remove(container);
+    if(buffer!=null)
+      m_used = m_used - bufferSize(buffer.getWidth(), buffer.getHeight());
+    }
+
+  }
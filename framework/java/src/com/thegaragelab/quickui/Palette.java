@@ -44,8 +44,7 @@ public class Palette extends Asset {
     for(int index=0; index<PALETTE_SIZE; index++)
       m_colors[index] = new Color(buffer.getShort());
     // Save away the raw data
-    m_data = new byte[size];
-    System.arraycopy(data, offset, m_data, 0, size);
+    setData(data, offset, size);
     }
 
   //-------------------------------------------------------------------------
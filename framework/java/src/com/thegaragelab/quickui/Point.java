@@ -86,6 +86,19 @@ public class Point implements IPoint {
     return new Point(x + origin.getX(), y + origin.getY());
     }
   
+  /** Translate the point into an existing instance
+   * 
+   * @param origin the new origin for the co-ordinates.
+   * @param result the Point to store the translated co-ordinates in.
+   * 
+   * @return the result instance.
+   */
+  public Point translate(IPoint origin, Point result) {
+    result.x = x + origin.getX();
+    result.y = y + origin.getY();
+    return result;
+    }
+  
   //-------------------------------------------------------------------------
   // Static helpers
   //-------------------------------------------------------------------------
@@ -123,4 +136,18 @@ public class Point implements IPoint {
       );
     }
   
+  /** Offset the point into an existing instance
+   * 
+   * @param origin the new origin
+   * @param point the point to find the offset of
+   * @param result the Point to store the offset in.
+   * 
+   * @return the result instance.
+   */
+  public static final Point offset(IPoint origin, IPoint point, Point result) {
+    result.x = point.getX() - origin.getX();
+    result.y = point.getY() - origin.getY();
+    return result;
+    }
+  
   }
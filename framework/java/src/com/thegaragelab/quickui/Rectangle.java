@@ -176,5 +176,191 @@ public class Rectangle extends Point implements IRectangle {
   public static final String toString(IRectangle rect) {
     return Point.toString(rect) + ", " + Dimension.toString(rect);
     }
+
+  /** Determine the area of a rectangle
+   * 
+   * @param rect the IRectangle to measure.
+   * 
+   * @return the area of the rectangle in pixels (0 for empty rectangles).
+   */
+  public static final int area(IRectangle rect) {
+    if((rect.getWidth()<=0)||(rect.getHeight()<=0))
+      return 0;
+    return rect.getWidth() * rect.getHeight();
+    }
+
+  /** Determine if two rectangles overlap
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * 
+   * @return true if the rectangles share at least one pixel.
+   */
+  public static final boolean intersects(IRectangle a, IRectangle b) {
+    if((area(a)==0)||(area(b)==0))
+      return false;
+    if((a.getX()>=(b.getX() + b.getWidth()))||(b.getX()>=(a.getX() + a.getWidth())))
+      return false;
+    if((a.getY()>=(b.getY() + b.getHeight()))||(b.getY()>=(a.getY() + a.getHeight())))
+      return false;
+    return true;
+    }
+
+  /** Find the area common to two rectangles
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * 
+   * @return a new Rectangle describing the area shared by both rectangles
+   *         or null if they do not overlap.
+   */
+  public static final Rectangle intersection(IRectangle a, IRectangle b) {
+    Rectangle result = new Rectangle(0, 0, 0, 0);
+    if(!intersection(a, b, result))
+      return null;
+    return result;
+    }
+
+  /** Find the area common to two rectangles
+   * 
+   * This version stores the result in an existing Rectangle instance (which
+   * may be one of the inputs) rather than creating a new one.
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * @param result the Rectangle to store the shared area in. If the
+   *               rectangles do not overlap this is set to an empty
+   *               rectangle at the location of the second rectangle.
+   * 
+   * @return true if the rectangles overlap, false if not.
+   */
+  public static final boolean intersection(IRectangle a, IRectangle b, Rectangle result) {
+    if(!intersects(a, b)) {
+      result.x = b.getX();
+      result.y = b.getY();
+      result.width = 0;
+      result.height = 0;
+      return false;
+      }
+    int x1 = Math.max(a.getX(), b.getX());
+    int y1 = Math.max(a.getY(), b.getY());
+    int x2 = Math.min(a.getX() + a.getWidth(), b.getX() + b.getWidth());
+    int y2 = Math.min(a.getY() + a.getHeight(), b.getY() + b.getHeight());
+    result.x = x1;
+    result.y = y1;
+    result.width = x2 - x1;
+    result.height = y2 - y1;
+    return true;
+    }
+
+  /** Remove the area covered by one rectangle from another
+   * 
+   * The result is the smallest rectangle that contains all of the first
+   * rectangle that is not covered by the second. This is only smaller than
+   * the first rectangle if the second covers it completely in one direction.
+   * 
+   * @param a the rectangle to remove an area from.
+   * @param b the area to remove.
+   * 
+   * @return a new Rectangle describing the remaining area or null if the
+   *         second rectangle completely covers the first.
+   */
+  public static final Rectangle subtract(IRectangle a, IRectangle b) {
+    Rectangle result = new Rectangle(0, 0, 0, 0);
+    if(!subtract(a, b, result))
+      return null;
+    return result;
+    }
+
+  /** Remove the area covered by one rectangle from another
+   * 
+   * This version stores the result in an existing Rectangle instance (which
+   * may be one of the inputs) rather than creating a new one.
+   * 
+   * @param a the rectangle to remove an area from.
+   * @param b the area to remove.
+   * @param result the Rectangle to store the remaining area in.
+   * 
+   * @return true if some area remains, false if the second rectangle
+   *         completely covers the first (the result is undefined).
+   */
+  public static final boolean subtract(IRectangle a, IRectangle b, Rectangle result) {
+    if(area(a)==0)
+      return false;
+    if(result!=a) {
+      result.x = a.getX();
+      result.y = a.getY();
+      result.width = a.getWidth();
+      result.height = a.getHeight();
+      }
+    if(!intersects(result, b))
+      return true;
+    int ax1 = result.x, ay1 = result.y;
+    int ax2 = ax1 + result.width, ay2 = ay1 + result.height;
+    int bx2 = b.getX() + b.getWidth(), by2 = b.getY() + b.getHeight();
+    boolean spansX = (b.getX()<=ax1)&&(bx2>=ax2);
+    boolean spansY = (b.getY()<=ay1)&&(by2>=ay2);
+    if(spansX&&spansY)
+      return false;
+    if(spansY) {
+      // Trim the left or right edge
+      if(b.getX()<=ax1) {
+        result.x = bx2;
+        result.width = ax2 - bx2;
+        }
+      else if(bx2>=ax2)
+        result.width = b.getX() - ax1;
+      }
+    else if(spansX) {
+      // Trim the top or bottom edge
+      if(b.getY()<=ay1) {
+        result.y = by2;
+        result.height = ay2 - by2;
+        }
+      else if(by2>=ay2)
+        result.height = b.getY() - ay1;
+      }
+    return true;
+    }
   
+  /** Find the smallest rectangle that contains two others
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * 
+   * @return a new Rectangle that contains both rectangles. Empty rectangles
+   *         are ignored.
+   */
+  public static final Rectangle union(IRectangle a, IRectangle b) {
+    return union(a, b, new Rectangle(0, 0, 0, 0));
+    }
+
+  /** Find the smallest rectangle that contains two others
+   * 
+   * This version stores the result in an existing Rectangle instance (which
+   * may be one of the inputs) rather than creating a new one.
+   * 
+   * @param a the first rectangle.
+   * @param b the second rectangle.
+   * @param result the Rectangle to store the combined area in.
+   * 
+   * @return the Rectangle passed in to the method.
+   */
+  public static final Rectangle union(IRectangle a, IRectangle b, Rectangle result) {
+    // Empty rectangles are ignored
+    if(area(a)==0)
+      a = b;
+    else if(area(b)==0)
+      b = a;
+    int x1 = Math.min(a.getX(), b.getX());
+    int y1 = Math.min(a.getY(), b.getY());
+    int x2 = Math.max(a.getX() + a.getWidth(), b.getX() + b.getWidth());
+    int y2 = Math.max(a.getY() + a.getHeight(), b.getY() + b.getHeight());
+    result.x = x1;
+    result.y = y1;
+    result.width = x2 - x1;
+    result.height = y2 - y1;
+    return result;
+    }
+
   }
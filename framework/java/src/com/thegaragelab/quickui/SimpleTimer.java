@@ -7,11 +7,13 @@
 *---------------------------------------------------------------------------*/
 package com.thegaragelab.quickui;
 
-//--- Imports
-import java.util.*;
-
 /** Represents a timer that can be used to trigger events at a later date
  *
+ * Timers are kept on a TimerWheel keyed on System.nanoTime() so creating
+ * and stopping a timer takes the same time regardless of how many timers
+ * exist and each update only examines the timers that are due. Timers may
+ * be created and stopped from any thread, the listeners are always called
+ * from the thread that runs the Application.
  */
 public class SimpleTimer {
   /** The listener to use for timer events
@@ -32,14 +34,26 @@ public class SimpleTimer {
   // Construction and initialisation
   //-------------------------------------------------------------------------
 
+  //--- Internal constants
+  private static final long NANOS_PER_MILLI = 1000000; //! Conversion from milliseconds to nanoseconds
+
   //--- Class variables
-  private static Set<SimpleTimer> m_simpleTimers = new HashSet<SimpleTimer>();
+  private static TimerWheel m_wheel = new TimerWheel(System.nanoTime());
   
   //--- Instance variables
   private boolean  m_repeat;   //! True if this timer repeats
-  private long     m_last;     //! The last time we triggered an event
-  private long     m_wait;     //! How long to wait between events
+  private long     m_period;   //! How long to wait between events (in nanoseconds)
   private Listener m_listener; //! The listener to receive events
+  private boolean  m_stopped;  //! True if the timer has been stopped
+  private long     m_late;     //! How late the last event was (in nanoseconds)
+
+  //--- Used by the TimerWheel
+  long        m_deadline;  //! When the timer is next due (from System.nanoTime())
+  long        m_tick;      //! The tick of the wheel the timer is in
+  boolean     m_scheduled; //! True if the timer is on the wheel
+  SimpleTimer m_prev;      //! Previous timer in the same slot
+  SimpleTimer m_next;      //! Next timer in the same slot
+  SimpleTimer m_fired;     //! Next timer that expired in the same update
   
   /** Constructor
    * 
@@ -48,8 +62,8 @@ public class SimpleTimer {
    * @param repeat true if we should repeat events rather than just send one.
    */
   private SimpleTimer(long wait, Listener listener, boolean repeat) {
-    m_last = System.currentTimeMillis();
-    m_wait = wait;
+    m_period = Math.max(0, wait) * NANOS_PER_MILLI;
+    m_deadline = System.nanoTime() + m_period;
     m_repeat = repeat;
     m_listener = listener;
     }
@@ -66,10 +80,8 @@ public class SimpleTimer {
    * @param wait how long to wait (in milliseconds) before triggering an event
    * @param listener the listener for the event.
    */
-  public static final synchronized SimpleTimer once(long wait, Listener listener) {
-    SimpleTimer simpleTimer = new SimpleTimer(wait, listener, false);
-    m_simpleTimers.add(simpleTimer);
-    return simpleTimer;
+  public static final SimpleTimer once(long wait, Listener listener) {
+    return schedule(new SimpleTimer(wait, listener, false));
     }
   
   /** Create a repeating timer
@@ -80,58 +92,86 @@ public class SimpleTimer {
    * @param listener the listener for the event.
    */
   public static final SimpleTimer repeat(long wait, Listener listener) {
-    SimpleTimer simpleTimer = new SimpleTimer(wait, listener, true);
-    m_simpleTimers.add(simpleTimer);
-    return simpleTimer;
+    return schedule(new SimpleTimer(wait, listener, true));
     }
   
   //-------------------------------------------------------------------------
   // SimpleTimer management
   //-------------------------------------------------------------------------
 
-  /** Remove a timer
+  /** Add a new timer to the wheel
    * 
-   * Remove a periodic timer. Once removed a periodic timer will no longer
-   * send events to the listener.
+   * The event loop is woken up as the new timer may be due before it would
+   * otherwise stop waiting.
    * 
-   * @param simpleTimer the timer to remove.
+   * @param simpleTimer the timer to add.
+   * 
+   * @return the timer that was added.
    */
-  private static final synchronized void remove(SimpleTimer simpleTimer) {
-    m_simpleTimers.remove(simpleTimer);
+  private static final SimpleTimer schedule(SimpleTimer simpleTimer) {
+    synchronized(m_wheel) {
+      m_wheel.add(simpleTimer);
+      }
+    Application app = Application.getInstance();
+    if(app!=null)
+      app.wakeup();
+    return simpleTimer;
     }
   
   /** Update all timers
    * 
-   * This helper updates all timers and calls the listeners as needed.
+   * This helper triggers all timers that are due and calls the listeners as
+   * needed. Repeating timers are put back on the wheel before the listeners
+   * are called so a listener may safely stop (or create) timers.
    */
-  static final synchronized void update() {
-    // Create a copy of the set of timers as an array
-    SimpleTimer[] timers = new SimpleTimer[m_simpleTimers.size()];
-    timers = m_simpleTimers.toArray(timers);
-    // Get the current time and use that to trigger timers
-    long now = System.currentTimeMillis();
-    for(int i=0; i<timers.length; i++)
-      timers[i].trigger(now);
+  static final void update() {
+    long now = System.nanoTime();
+    SimpleTimer fired;
+    synchronized(m_wheel) {
+      fired = m_wheel.expire(now);
+      for(SimpleTimer timer=fired; timer!=null; timer=timer.m_fired) {
+        timer.m_late = now - timer.m_deadline;
+        if(timer.m_repeat) {
+          // Keep to the original schedule unless we have fallen behind
+          timer.m_deadline = Math.max(timer.m_deadline + timer.m_period, now + 1);
+          m_wheel.add(timer);
+          }
+        }
+      }
+    // Dispatch the events without holding the lock
+    while(fired!=null) {
+      SimpleTimer timer = fired;
+      fired = timer.m_fired;
+      timer.m_fired = null;
+      timer.trigger();
+      }
     }
   
-  /** Trigger an event
+  /** Determine when the next timer is due
    * 
-   * This method is used to determine if the timer should trigger an event,
-   * and if so, dispatch that event to the listener.
+   * @return the time (from System.nanoTime()) that the earliest timer
+   *         should trigger or Long.MAX_VALUE if there are no timers.
+   */
+  static final long nextDeadline() {
+    synchronized(m_wheel) {
+      return m_wheel.nextDeadline();
+      }
+    }
+  
+  /** Trigger an event
    * 
-   * @param now the current time. Used to determine if the timer should
-   *            trigger or not.
+   * Dispatch the event for a timer that has expired to the listener unless
+   * the timer was stopped after it expired.
    */
-  private void trigger(long now) {
-    if((now-m_last)>m_wait) {
-      // Trigger the timer
-      if(m_listener!=null)
-        m_listener.onTimer(this, now - m_last - m_wait);
-      // Reset state
-      m_last = now;
-      if(!m_repeat)
-        SimpleTimer.remove(this);
+  private void trigger() {
+    long late;
+    synchronized(m_wheel) {
+      if(m_stopped)
+        return;
+      late = m_late;
       }
+    if(m_listener!=null)
+      m_listener.onTimer(this, late / NANOS_PER_MILLI);
     }
   
   //-------------------------------------------------------------------------
@@ -144,7 +184,10 @@ public class SimpleTimer {
    * it should no longer trigger any more events.
    */
   public void stop() {
-    SimpleTimer.remove(this);
+    synchronized(m_wheel) {
+      m_stopped = true;
+      m_wheel.remove(this);
+      }
     }
   
   }
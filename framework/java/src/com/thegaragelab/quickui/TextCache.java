@@ -0,0 +1,264 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.nio.*;
+import java.util.*;
+
+/** Caches pre-rendered strings for the native driver.
+ * 
+ * Each entry is a monochrome Icon containing a complete string rendered in
+ * a specific font. Drawing the string is then a single image operation
+ * instead of converting the string and rendering each character in turn.
+ * The color is applied when the Icon is drawn so the same entry is shared
+ * by all colors.
+ * 
+ * The total memory used by all entries is limited to a budget, when a new
+ * entry would exceed the budget the least recently used entries are
+ * discarded to make room.
+ */
+class TextCache {
+  //--- Constants
+  static final int DEFAULT_BUDGET = 64 * 1024; //! Default budget (in bytes)
+
+  //--- Internal constants
+  private static final int IMAGE_HEADER = 4;   //! Size of the image header in bytes
+  private static final int MAX_SIZE     = 255; //! Largest width or height that can be drawn in one operation
+
+  /** Identifies a single cache entry
+   */
+  private static class RunKey {
+    //--- Instance variables
+    private Font   m_font;   //! The font used to render the string
+    private String m_string; //! The string that was rendered
+
+    /** Constructor
+     * 
+     * @param font the font used to render the string.
+     * @param string the string that was rendered.
+     */
+    RunKey(Font font, String string) {
+      set(font, string);
+      }
+
+    /** Change the entry identified by this key
+     * 
+     * @param font the font used to render the string.
+     * @param string the string that was rendered.
+     */
+    void set(Font font, String string) {
+      m_font = font;
+      m_string = string;
+      }
+
+    @Override
+    public boolean equals(Object other) {
+      if(!(other instanceof RunKey))
+        return false;
+      RunKey key = (RunKey)other;
+      return (m_font==key.m_font)&&m_string.equals(key.m_string);
+      }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(m_font) * 31) + m_string.hashCode();
+      }
+    }
+
+  //--- Instance variables
+  private Driver                      m_driver; //! The driver that draws the strings
+  private LinkedHashMap<RunKey, Icon> m_runs;   //! Rendered strings in LRU order
+  private int                         m_budget; //! Maximum number of bytes to use
+  private int                         m_used;   //! Number of bytes currently in use
+  private RunKey                      m_probe;  //! Key used to look up entries (avoids allocating)
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Constructor
+   * 
+   * @param driver the Driver that will draw the strings. Entries are
+   *               released from the driver when they are discarded.
+   */
+  TextCache(Driver driver) {
+    m_driver = driver;
+    // Use access order so the eldest entry is the least recently used
+    m_runs = new LinkedHashMap<RunKey, Icon>(64, 0.75f, true);
+    m_budget = DEFAULT_BUDGET;
+    m_probe = new RunKey(null, null);
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Get the number of bytes in a single line of a monochrome image
+   * 
+   * @param width the width of the image in pixels.
+   * 
+   * @return the number of bytes used for each line of the image.
+   */
+  private static int lineLength(int width) {
+    return ((width - 1) / 8) + 1;
+    }
+
+  /** Clamp the width (or height) of the source area of an image.
+   * 
+   * This mirrors the adjustment made by the common drivers so the rendered
+   * string matches drawing each character individually.
+   * 
+   * @param start the starting co-ordinate in the image.
+   * @param size the requested size.
+   * @param limit the size of the image.
+   * 
+   * @return the adjusted size.
+   */
+  private static int clampSource(int start, int size, int limit) {
+    if((start + size)>limit)
+      size = (limit - 1 - start) & 0xFF;
+    return size;
+    }
+
+  /** Render a string into a new Icon
+   * 
+   * @param font the font to render the string with.
+   * @param string the string to render.
+   * @param budget the largest number of bytes the Icon may use.
+   * 
+   * @return the Icon containing the rendered string or null if the string
+   *         is empty, too large to render as a single Icon or would use more
+   *         than the given number of bytes.
+   */
+  private static Icon render(Font font, String string, int budget) {
+    // Determine the size of the result (the string is NUL terminated)
+    int width = 0, length = 0;
+    while(length<string.length()) {
+      int ch = Font.toASCII(string.charAt(length));
+      if(ch==0)
+        break;
+      width = width + font.getCharWidth(ch);
+      length = Font.nextChar(string, length);
+      }
+    int height = font.getHeight();
+    if((width==0)||(width>MAX_SIZE)||(height>MAX_SIZE))
+      return null;
+    // Set up the image header
+    int bpl = lineLength(width);
+    if((IMAGE_HEADER + (bpl * height))>budget)
+      return null;
+    byte[] data = new byte[IMAGE_HEADER + (bpl * height)];
+    data[0] = (byte)(width - 1);
+    data[1] = (byte)(height - 1);
+    data[2] = 1;
+    // Copy each character from the font
+    Icon glyphs = font.getIcon();
+    ByteBuffer source = glyphs.getBuffer();
+    int srcBpl = lineLength(glyphs.getWidth());
+    int x = 0;
+    for(int index=0; index<length; index=Font.nextChar(string, index)) {
+      int ch = Font.toASCII(string.charAt(index));
+      int sx = font.getCharX(ch), sy = font.getCharY(ch);
+      int w = clampSource(sx, font.getCharWidth(ch), glyphs.getWidth());
+      int h = clampSource(sy, height, glyphs.getHeight());
+      for(int dy=0; (dy<h)&&(dy<height); dy++) {
+        for(int dx=0; (dx<w)&&((x + dx)<width); dx++) {
+          int px = sx + dx, py = sy + dy;
+          if((px>=glyphs.getWidth())||(py>=glyphs.getHeight()))
+            continue;
+          if((source.get(IMAGE_HEADER + (py * srcBpl) + (px / 8)) & (0x80 >> (px % 8)))!=0)
+            data[IMAGE_HEADER + (dy * bpl) + ((x + dx) / 8)] |= (0x80 >> ((x + dx) % 8));
+          }
+        }
+      x = x + font.getCharWidth(ch);
+      }
+    return new Icon(data, 0, data.length);
+    }
+
+  /** Discard least recently used entries
+   * 
+   * @param required the number of bytes that must be available.
+   */
+  private void evict(int required) {
+    Iterator<Map.Entry<RunKey, Icon>> entries = m_runs.entrySet().iterator();
+    while(((m_used + required)>m_budget)&&entries.hasNext()) {
+      Icon run = entries.next().getValue();
+      m_used = m_used - run.getBuffer().limit();
+      m_driver.releaseAsset(run);
+      entries.remove();
+      }
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Get the memory budget
+   * 
+   * @return the maximum number of bytes used by all entries.
+   */
+  int getBudget() {
+    return m_budget;
+    }
+
+  /** Set the memory budget
+   * 
+   * Reducing the budget will discard entries until the new budget is met.
+   * A budget of 0 disables the cache.
+   * 
+   * @param budget the maximum number of bytes to use for all entries.
+   */
+  void setBudget(int budget) {
+    m_budget = Math.max(0, budget);
+    evict(0);
+    }
+
+  /** Get the memory currently in use
+   * 
+   * @return the number of bytes used by all entries.
+   */
+  int getUsed() {
+    return m_used;
+    }
+
+  /** Get the rendered version of a string
+   * 
+   * The string is rendered and added to the cache if it is not already
+   * present.
+   * 
+   * @param font the font to render the string with.
+   * @param string the string to render.
+   * 
+   * @return an Icon containing the rendered string or null if the string
+   *         cannot be cached (it should be drawn directly instead).
+   */
+  Icon get(Font font, String string) {
+    if((font==null)||(font.getIcon()==null)||(font.getIcon().getBuffer()==null)||(string==null))
+      return null;
+    m_probe.set(font, string);
+    Icon run = m_runs.get(m_probe);
+    m_probe.set(null, null);
+    if(run!=null)
+      return run;
+    // Render and add it
+    run = render(font, string, m_budget);
+    if((run==null)||(run.getBuffer()==null))
+      return null;
+    evict(run.getBuffer().limit());
+    m_runs.put(new RunKey(font, string), run);
+    m_used = m_used + run.getBuffer().limit();
+    return run;
+    }
+
+  /** Remove all entries
+   */
+  void clear() {
+    for(Icon run : m_runs.values())
+      m_driver.releaseAsset(run);
+    m_runs.clear();
+    m_used = 0;
+    }
+
+  }
@@ -0,0 +1,181 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+/** A hashed timing wheel used to schedule SimpleTimer instances.
+ * 
+ * Time is divided into ticks and each timer is placed in the slot of the
+ * wheel for the tick it is due in. The slots are linked lists threaded
+ * through the timers themselves so adding and removing a timer does not
+ * depend on the number of timers and does not create any new objects.
+ * Checking for expired timers only visits the slots for the ticks that have
+ * passed since the last check.
+ * 
+ * Times are taken from System.nanoTime() so changes to the wall clock do
+ * not affect timers. This class is not thread safe, SimpleTimer provides
+ * the locking.
+ */
+class TimerWheel {
+  //--- Constants
+  static final long TICK = 1000000; //! Length of a single tick (in nanoseconds)
+  static final int  SIZE = 512;     //! Number of slots in the wheel (must be a power of 2)
+
+  //--- Internal constants
+  private static final int MASK = SIZE - 1; //! Mask to convert a tick into a slot
+
+  //--- Instance variables
+  private SimpleTimer[] m_slots;    //! First timer in each slot
+  private long          m_tick;     //! The last tick that has been completely processed
+  private int           m_count;    //! Number of timers on the wheel
+  private long          m_earliest; //! Cached value of the earliest deadline
+  private boolean       m_valid;    //! True if m_earliest is valid
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Constructor
+   * 
+   * @param now the current time (from System.nanoTime()).
+   */
+  TimerWheel(long now) {
+    m_slots = new SimpleTimer[SIZE];
+    m_tick = Math.floorDiv(now, TICK) - 1;
+    m_earliest = Long.MAX_VALUE;
+    m_valid = true;
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Unlink a timer from it's slot
+   * 
+   * @param timer the timer to unlink.
+   */
+  private void unlink(SimpleTimer timer) {
+    if(timer.m_prev!=null)
+      timer.m_prev.m_next = timer.m_next;
+    else
+      m_slots[(int)(timer.m_tick & MASK)] = timer.m_next;
+    if(timer.m_next!=null)
+      timer.m_next.m_prev = timer.m_prev;
+    timer.m_prev = null;
+    timer.m_next = null;
+    timer.m_scheduled = false;
+    m_count--;
+    }
+
+  /** Find the earliest deadline of all timers on the wheel
+   * 
+   * @return the earliest deadline or Long.MAX_VALUE if there are no timers.
+   */
+  private long findEarliest() {
+    if(m_count==0)
+      return Long.MAX_VALUE;
+    // Look for the first tick with a timer due in the current revolution
+    for(long tick=m_tick + 1; tick<=(m_tick + SIZE); tick++) {
+      long earliest = Long.MAX_VALUE;
+      for(SimpleTimer timer=m_slots[(int)(tick & MASK)]; timer!=null; timer=timer.m_next) {
+        if(timer.m_tick==tick)
+          earliest = Math.min(earliest, timer.m_deadline);
+        }
+      if(earliest!=Long.MAX_VALUE)
+        return earliest;
+      }
+    // Everything is further away, check them all
+    long earliest = Long.MAX_VALUE;
+    for(int slot=0; slot<SIZE; slot++) {
+      for(SimpleTimer timer=m_slots[slot]; timer!=null; timer=timer.m_next)
+        earliest = Math.min(earliest, timer.m_deadline);
+      }
+    return earliest;
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Add a timer to the wheel
+   * 
+   * The timer is scheduled for it's current deadline. A timer that is
+   * already on the wheel must be removed first.
+   * 
+   * @param timer the timer to add.
+   */
+  void add(SimpleTimer timer) {
+    // Timers that are already due go in the next tick to be processed
+    timer.m_tick = Math.max(Math.floorDiv(timer.m_deadline, TICK), m_tick + 1);
+    int slot = (int)(timer.m_tick & MASK);
+    timer.m_prev = null;
+    timer.m_next = m_slots[slot];
+    if(timer.m_next!=null)
+      timer.m_next.m_prev = timer;
+    m_slots[slot] = timer;
+    timer.m_scheduled = true;
+    m_count++;
+    if(m_valid)
+      m_earliest = Math.min(m_earliest, timer.m_deadline);
+    }
+
+  /** Remove a timer from the wheel
+   * 
+   * @param timer the timer to remove.
+   * 
+   * @return true if the timer was removed, false if it was not on the wheel.
+   */
+  boolean remove(SimpleTimer timer) {
+    if(!timer.m_scheduled)
+      return false;
+    unlink(timer);
+    if(timer.m_deadline==m_earliest)
+      m_valid = false;
+    return true;
+    }
+
+  /** Remove all timers that have expired
+   * 
+   * @param now the current time (from System.nanoTime()).
+   * 
+   * @return the first expired timer (the rest are linked through the
+   *         m_fired member) or null if no timers have expired.
+   */
+  SimpleTimer expire(long now) {
+    if((m_count==0)||(now<m_earliest))
+      return null;
+    long current = Math.floorDiv(now, TICK);
+    long last = Math.min(current, m_tick + SIZE);
+    SimpleTimer fired = null;
+    for(long tick=m_tick + 1; tick<=last; tick++) {
+      SimpleTimer timer = m_slots[(int)(tick & MASK)];
+      while(timer!=null) {
+        SimpleTimer next = timer.m_next;
+        if(timer.m_deadline<=now) {
+          unlink(timer);
+          timer.m_fired = fired;
+          fired = timer;
+          }
+        timer = next;
+        }
+      }
+    // The current tick may still have timers that are due later
+    m_tick = current - 1;
+    m_valid = false;
+    return fired;
+    }
+
+  /** Get the earliest deadline
+   * 
+   * @return the deadline (from System.nanoTime()) of the next timer due to
+   *         expire or Long.MAX_VALUE if there are no timers.
+   */
+  long nextDeadline() {
+    if(!m_valid) {
+      m_earliest = findEarliest();
+      m_valid = true;
+      }
+    return m_earliest;
+    }
+
+  }
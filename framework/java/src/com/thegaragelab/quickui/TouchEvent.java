@@ -22,6 +22,8 @@ public class TouchEvent implements IPoint {
   int  m_type; //! Type of the event
   int  m_xpos; //! First parameter for the event
   int  m_ypos; //! Second parameter for the event
+  int  m_time; //! When the event occurred (in milliseconds)
+  int  m_samples; //! Number of samples merged into this event
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -34,11 +36,39 @@ public class TouchEvent implements IPoint {
    *  @param evType the type of the event.
    *  @param xpos the first parameter of the event.
    *  @param ypos the second parameter of the event.
+   *  @param time when the event occurred (in milliseconds).
    */
-  TouchEvent(int evType, int xpos, int ypos) {
+  TouchEvent(int evType, int xpos, int ypos, int time) {
+    set(evType, xpos, ypos, time);
+    }
+
+  /** Change the details of this event
+   * 
+   * Events are reused rather than creating a new instance for each one.
+   * 
+   * @param evType the type of the event.
+   * @param xpos the first parameter of the event.
+   * @param ypos the second parameter of the event.
+   * @param time when the event occurred (in milliseconds).
+   */
+  void set(int evType, int xpos, int ypos, int time) {
     m_type = evType;
     m_xpos = xpos;
     m_ypos = ypos;
+    m_time = time;
+    m_samples = 1;
+    }
+
+  /** Copy the details of another event
+   * 
+   * @param event the event to copy.
+   */
+  void copy(TouchEvent event) {
+    m_type = event.m_type;
+    m_xpos = event.m_xpos;
+    m_ypos = event.m_ypos;
+    m_time = event.m_time;
+    m_samples = event.m_samples;
     }
 
   //-------------------------------------------------------------------------
@@ -69,6 +99,29 @@ public class TouchEvent implements IPoint {
   public int getEventType() {
     return m_type;
     }
+
+  /** Get the time the event occurred
+   * 
+   * The time is measured in milliseconds from an arbitrary starting point
+   * and wraps around so it is only useful to compare it with the time of
+   * other events (using int arithmetic).
+   * 
+   * @return the time the event occurred (in milliseconds).
+   */
+  public int getTime() {
+    return m_time;
+    }
+
+  /** Get the number of samples this event represents
+   * 
+   * Consecutive drag events are merged in the event queue, the position of
+   * the event is the position of the most recent sample.
+   * 
+   * @return the number of samples merged into this event (at least 1).
+   */
+  public int getSamples() {
+    return m_samples;
+    }
   
   //-------------------------------------------------------------------------
   // Implementation of IPoint
@@ -116,4 +169,17 @@ public class TouchEvent implements IPoint {
     return new Point(getX() + origin.getX(), getY() + origin.getY());
     }
   
+  /** Translate the point into an existing instance
+   * 
+   * @param origin the new origin for the co-ordinates.
+   * @param result the Point to store the translated co-ordinates in.
+   * 
+   * @return the result instance.
+   */
+  public Point translate(IPoint origin, Point result) {
+    result.x = getX() + origin.getX();
+    result.y = getY() + origin.getY();
+    return result;
+    }
+  
   }
@@ -22,12 +22,30 @@ public class Window implements IWindow {
   protected static final int WIN_FLAG_VISIBLE          = WIN_FLAG_DIRTY << 1;
   protected static final int WIN_FLAG_ACCEPT_TOUCH     = WIN_FLAG_VISIBLE << 1;
   protected static final int WIN_FLAG_ERASE_BACKGROUND = WIN_FLAG_ACCEPT_TOUCH << 1;
+  protected static final int WIN_FLAG_OPAQUE           = WIN_FLAG_ERASE_BACKGROUND << 1;
+  protected static final int WIN_FLAG_CACHED           = WIN_FLAG_OPAQUE << 1;
   
+  //--- Class variables
+  private static int m_layout; //! Changed whenever any window is moved or resized
+
   //--- Instance variables
   private Container m_parent;     //! The parent Window
   private Rectangle m_rectangle;  //! Position and size of the window (relative)
   private Rectangle m_absolute;   //! The absolute position and size of the window
+  private boolean   m_moved;      //! True if m_rectangle has changed since m_absolute was calculated
+  private int       m_generation; //! Incremented each time m_absolute changes
+  private int       m_basis;      //! The parent's m_generation when m_absolute was calculated
+  private int       m_checked;    //! The value of m_layout when m_absolute was last checked
+  private int       m_updating;   //! Number of calls to beginUpdate() without a matching endUpdate()
+  private Rectangle m_before;     //! Absolute position and size when the update started (reused)
+  private Rectangle m_invalid;    //! Area invalidated since the last repaint (window co-ordinates, empty if none)
+  private Rectangle m_region;     //! Working area for the dirty region (reused)
+  private boolean   m_painting;   //! True while onEraseBackground() and onPaint() are being called
   private Flags     m_flags;      //! Current flags
+
+  //--- Used by the parent Container and it's WindowGrid
+  int       m_order;      //! Position of the window in the parent's list of children
+  Rectangle m_indexed;    //! The area the window is listed under in the parent's grid (empty if not listed)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -136,20 +154,120 @@ public class Window implements IWindow {
   
   /** Get our absolute position
    * 
-   * @return an IRectangle representing our absolute screen position
+   * The position is cached and only recalculated when this window or one of
+   * it's parents has been moved or resized. Each window records the
+   * generation of it's parent's position that it was calculated from so a
+   * change to a parent is picked up by the children the next time they are
+   * asked for their position. If no window has changed since the last call
+   * the cached value is returned without checking the parents.
+   * 
+   * @return an IRectangle representing our absolute screen position. The
+   *         same instance is returned each time and must not be modified.
    */
   public IRectangle getAbsolute() {
-    // If we already have it, return it
-    if(m_absolute!=null)
+    // Nothing has moved since we last checked
+    if((m_absolute!=null)&&(m_checked==m_layout))
       return m_absolute;
-    // Recalculate the value
-    if(m_parent==null)
+    if(m_absolute==null) {
       m_absolute = new Rectangle(m_rectangle);
-    else
-      m_absolute = (Rectangle)m_rectangle.translate(m_parent.getAbsolute());
+      m_moved = true;
+      }
+    // Recalculate if we or our parent have changed
+    int x = m_rectangle.x;
+    int y = m_rectangle.y;
+    int basis = 0;
+    if(m_parent!=null) {
+      IRectangle origin = m_parent.getAbsolute();
+      x += origin.getX();
+      y += origin.getY();
+      basis = ((Window)m_parent).m_generation;
+      }
+    if(m_moved||(basis!=m_basis)) {
+      m_absolute.x = x;
+      m_absolute.y = y;
+      m_absolute.width = m_rectangle.width;
+      m_absolute.height = m_rectangle.height;
+      m_basis = basis;
+      m_moved = false;
+      m_generation++;
+      }
+    m_checked = m_layout;
     return m_absolute;
     }
   
+  /** Mark the absolute position of this window (and it's children) as changed
+   * 
+   * The new position is calculated the next time it is needed.
+   */
+  private void positionChanged() {
+    m_moved = true;
+    m_layout++;
+    }
+  
+  /** Start a group of changes to the position and size of the window
+   * 
+   * Changes made between beginUpdate() and the matching call to endUpdate()
+   * are applied as a single change, the area repainted is limited to the
+   * original and final area of the window. Calls may be nested, the changes
+   * are applied when the outermost update ends.
+   */
+  public void beginUpdate() {
+    if(m_updating++>0)
+      return;
+    // Remember where we started from
+    IRectangle area = getAbsolute();
+    if(m_before==null)
+      m_before = new Rectangle(0, 0, 0, 0);
+    m_before.x = area.getX();
+    m_before.y = area.getY();
+    m_before.width = area.getWidth();
+    m_before.height = area.getHeight();
+    }
+  
+  /** Finish a group of changes to the position and size of the window
+   * 
+   * If the window has moved or changed size the area it used to cover and
+   * the area it now covers are repainted. Nothing else in the parent is
+   * repainted.
+   */
+  public void endUpdate() {
+    if((m_updating==0)||(--m_updating>0))
+      return;
+    if(m_parent==null)
+      return;
+    IRectangle area = getAbsolute();
+    if((area.getX()==m_before.x)&&(area.getY()==m_before.y)&&(area.getWidth()==m_before.width)&&(area.getHeight()==m_before.height))
+      return;
+    m_parent.childChanged(this);
+    if(!isVisible())
+      return;
+    // Cached copies of our parents are no longer valid
+    m_parent.invalidateLayer();
+    // Repaint the old and new areas
+    Container root = m_parent;
+    while(root.getParent()!=null)
+      root = (Container)root.getParent();
+    root.expose(m_before);
+    root.expose(area);
+    }
+  
+  /** Change the position and size of the window in a single operation
+   * 
+   * @param x the new X co-ordinate (relative to the parent).
+   * @param y the new Y co-ordinate (relative to the parent).
+   * @param width the new width.
+   * @param height the new height.
+   */
+  public void setBounds(int x, int y, int width, int height) {
+    beginUpdate();
+    m_rectangle.x = x;
+    m_rectangle.y = y;
+    m_rectangle.width = width;
+    m_rectangle.height = height;
+    positionChanged();
+    endUpdate();
+    }
+  
   /**
    * @see com.thegaragelab.quickui.IWindow#getParent()
    */
@@ -161,10 +279,19 @@ public class Window implements IWindow {
    * @see com.thegaragelab.quickui.IWindow#setDirty(boolean)
    */
   public void setDirty(boolean dirty) {
-    if(dirty)
+    if(dirty) {
       m_flags.setFlags(WIN_FLAG_DIRTY);
-    else
+      invalidateLayer();
+      // Make sure the event loop notices
+      Application app = Application.getInstance();
+      if(app!=null)
+        app.wakeup();
+      }
+    else {
       m_flags.clearFlags(WIN_FLAG_DIRTY);
+      if(m_invalid!=null)
+        m_invalid.width = 0;
+      }
     }
   
   /**
@@ -174,6 +301,78 @@ public class Window implements IWindow {
     return m_flags.areFlagsSet(WIN_FLAG_DIRTY | WIN_FLAG_VISIBLE);
     }
 
+  /**
+   * @see com.thegaragelab.quickui.IWindow#invalidate(com.thegaragelab.quickui.IRectangle)
+   */
+  public void invalidate(IRectangle rect) {
+    if(rect==null) {
+      setDirty(true);
+      return;
+      }
+    // Already repainting everything ?
+    if(m_flags.areFlagsSet(WIN_FLAG_DIRTY))
+      return;
+    // Limit the area to the window
+    int x1 = Math.max(0, rect.getX());
+    int y1 = Math.max(0, rect.getY());
+    int x2 = Math.min(getWidth(), rect.getX() + rect.getWidth());
+    int y2 = Math.min(getHeight(), rect.getY() + rect.getHeight());
+    if((x2<=x1)||(y2<=y1))
+      return;
+    // Add it to the existing area
+    if(m_invalid==null)
+      m_invalid = new Rectangle(0, 0, 0, 0);
+    if(m_invalid.width>0) {
+      x1 = Math.min(x1, m_invalid.x);
+      y1 = Math.min(y1, m_invalid.y);
+      x2 = Math.max(x2, m_invalid.x + m_invalid.width);
+      y2 = Math.max(y2, m_invalid.y + m_invalid.height);
+      }
+    m_invalid.x = x1;
+    m_invalid.y = y1;
+    m_invalid.width = x2 - x1;
+    m_invalid.height = y2 - y1;
+    invalidateLayer();
+    // Make sure the event loop notices
+    Application app = Application.getInstance();
+    if(app!=null)
+      app.wakeup();
+    }
+
+  /**
+   * @see com.thegaragelab.quickui.IWindow#getDirtyRegion()
+   */
+  public IRectangle getDirtyRegion() {
+    if(m_region==null)
+      m_region = new Rectangle(0, 0, 0, 0);
+    if(m_painting) {
+      // The part of the window being painted now
+      IRectangle area = getAbsolute();
+      IRectangle clip = Application.getInstance().getClip();
+      m_region.x = clip.getX() - area.getX();
+      m_region.y = clip.getY() - area.getY();
+      m_region.width = clip.getWidth();
+      m_region.height = clip.getHeight();
+      }
+    else if(isDirty()) {
+      m_region.x = 0;
+      m_region.y = 0;
+      m_region.width = getWidth();
+      m_region.height = getHeight();
+      }
+    else if(hasDirtyRegion()) {
+      m_region.x = m_invalid.x;
+      m_region.y = m_invalid.y;
+      m_region.width = m_invalid.width;
+      m_region.height = m_invalid.height;
+      }
+    else {
+      m_region.width = 0;
+      m_region.height = 0;
+      }
+    return m_region;
+    }
+
   /**
    * @see com.thegaragelab.quickui.IWindow#setVisible(boolean)
    */
@@ -187,8 +386,10 @@ public class Window implements IWindow {
     else
       m_flags.clearFlags(WIN_FLAG_VISIBLE);
     // Mark the parent as dirty
-    if(m_parent!=null)
+    if(m_parent!=null) {
+      m_parent.childChanged(this);
       m_parent.setDirty(true);
+      }
     // Let the window know the state has changed
     onVisible(visible);
     }
@@ -223,6 +424,33 @@ public class Window implements IWindow {
     return m_flags.areFlagsSet(WIN_FLAG_ERASE_BACKGROUND);
     }
   
+  /**
+   * @see com.thegaragelab.quickui.IWindow#setOpaque(boolean)
+   */
+  public void setOpaque(boolean opaque) {
+    // Any change ?
+    if(m_flags.areFlagsSet(WIN_FLAG_OPAQUE)==opaque)
+      return;
+    // Change the flag
+    if(opaque)
+      m_flags.setFlags(WIN_FLAG_OPAQUE);
+    else
+      m_flags.clearFlags(WIN_FLAG_OPAQUE);
+    // Windows beneath us may need to be repainted
+    if(m_parent!=null)
+      m_parent.setDirty(true);
+    }
+  
+  /** Determine if the window paints every pixel inside it's area.
+   * 
+   * Windows that erase their background are always considered opaque.
+   * 
+   * @return true if the window is opaque.
+   */
+  public boolean isOpaque() {
+    return m_flags.areFlagsSet(WIN_FLAG_OPAQUE)||m_flags.areFlagsSet(WIN_FLAG_ERASE_BACKGROUND);
+    }
+  
   /**
    * @see com.thegaragelab.quickui.IWindow#setAcceptTouch(boolean)
    */
@@ -249,6 +477,27 @@ public class Window implements IWindow {
       return null;
     return this;
     }
+
+  /** Find the window at a location
+   * 
+   * This is used by the parent container to search for a window without
+   * calculating absolute positions.
+   * 
+   * @param x the X co-ordinate (relative to the parent).
+   * @param y the Y co-ordinate (relative to the parent).
+   * 
+   * @return the smallest visible window that contains the point or null if
+   *         the point is outside this window.
+   */
+  Window hitTest(int x, int y) {
+    if(!isVisible())
+      return null;
+    if((x<m_rectangle.x)||((x - m_rectangle.x)>=m_rectangle.width))
+      return null;
+    if((y<m_rectangle.y)||((y - m_rectangle.y)>=m_rectangle.height))
+      return null;
+    return this;
+    }
   
   //-------------------------------------------------------------------------
   // Internal event and painting helpers
@@ -262,10 +511,46 @@ public class Window implements IWindow {
    * @param children the list of dirty children
    */
   void findDirtyChildren(List<Window> children) {
-    if(isDirty())
+    if(isDirty()||hasDirtyRegion())
       children.add(this);
     }
   
+  /** Determine if part of the window has been invalidated
+   * 
+   * @return true if the window is visible and invalidate() has been called
+   *         with an area inside the window since it was last painted.
+   */
+  boolean hasDirtyRegion() {
+    return (m_invalid!=null)&&(m_invalid.width>0)&&isVisible();
+    }
+  
+  /** Add the area of the window that needs repainting to a damage tracker
+   * 
+   * @param damage the DamageTracker to add the area to.
+   */
+  void addDamage(DamageTracker damage) {
+    if(isDirty()||!hasDirtyRegion())
+      damage.add(getAbsolute());
+    else
+      damage.add(getInvalidArea());
+    }
+  
+  /** Get the invalidated area in absolute co-ordinates
+   * 
+   * @return the area passed to invalidate() since the last repaint. The
+   *         instance is reused and is only valid until the next call.
+   */
+  private IRectangle getInvalidArea() {
+    IRectangle area = getAbsolute();
+    if(m_region==null)
+      m_region = new Rectangle(0, 0, 0, 0);
+    m_region.x = area.getX() + m_invalid.x;
+    m_region.y = area.getY() + m_invalid.y;
+    m_region.width = m_invalid.width;
+    m_region.height = m_invalid.height;
+    return m_region;
+    }
+  
   /** Set the offset for this window
    * 
    * @param offset the offset to use for future painting operations
@@ -285,25 +570,93 @@ public class Window implements IWindow {
    */
   void doRepaint(boolean force) {
     // If we are not visible or not dirty and not forced don't do anything
-    if((!isVisible())||(!(isDirty()||force))) {
+    boolean partial = !(isDirty()||force);
+    if((!isVisible())||(partial&&!hasDirtyRegion())) {
       setDirty(false);
       return;
       }
-    // Start the paint operation
-    Rectangle region = new Rectangle(this.getAbsolute());
-    Application.getInstance().setClip(region);
-    beginPaint();
-    setOffset(region);
-    // Erase the background if needed
-    if(getEraseBackground())
-      onEraseBackground();
-    // Repaint the window
-    onPaint();
-    // Finish the paint operation
-    endPaint();
+    // Start the paint operation (limited to the invalid area if possible)
+    Application.getInstance().pushClip(partial?getInvalidArea():getAbsolute());
+    if(!Application.getInstance().isClipEmpty()) {
+      beginPaint();
+      paintWindow();
+      // Finish the paint operation
+      endPaint();
+      }
+    Application.getInstance().popClip();
     setDirty(false);
     }
   
+  /** Paint the window within the current clipping region
+   * 
+   * This method assumes the clipping region has already been set up.
+   */
+  private void paintWindow() {
+    setOffset(getAbsolute());
+    m_painting = true;
+    try {
+      // Erase the background if needed
+      if(getEraseBackground())
+        onEraseBackground();
+      // Repaint the window
+      onPaint();
+      }
+    finally {
+      m_painting = false;
+      }
+    }
+  
+  /** Repaint the portion of the window inside the current clipping region
+   * 
+   * Unlike doRepaint() this ignores the 'dirty' state, the window is
+   * always painted if it is visible and overlaps the clipping region
+   * (usually a damaged region set up by the parent container).
+   */
+  void paintRegion() {
+    if(!isVisible())
+      return;
+    Application.getInstance().pushClip(getAbsolute());
+    if(!Application.getInstance().isClipEmpty()) {
+      paintWindow();
+      setDirty(false);
+      }
+    Application.getInstance().popClip();
+    }
+  
+  /** Discard any cached copies of this window
+   * 
+   * Called when the window changes so any cached containers it belongs to
+   * must be rendered again.
+   */
+  void invalidateLayer() {
+    if(m_parent!=null)
+      m_parent.invalidateLayer();
+    }
+  
+  /** Release any offscreen buffers used by this window
+   * 
+   * Called when the window is removed from it's parent.
+   */
+  void releaseLayer() {
+    // Nothing to do in this instance
+    }
+  
+  /** Clear the dirty state without painting
+   * 
+   * Used when the window cannot be seen so there is nothing to paint.
+   */
+  void markClean() {
+    setDirty(false);
+    }
+  
+  /** Determine if anything in this window needs to be repainted
+   * 
+   * @return true if the window needs to be repainted.
+   */
+  boolean needsRepaint() {
+    return isDirty()||hasDirtyRegion();
+    }
+  
   /** Called to do an update of the window
    */
   void doUpdate() {
@@ -339,8 +692,11 @@ public class Window implements IWindow {
    */
   public void onEraseBackground() {
     fillRect(
-      new Rectangle(Point.ORIGIN, this),
-      Application.getInstance().getSystemColor(Application.SYS_COLOR_WIN_BACKGROUND)
+      0,
+      0,
+      getWidth(),
+      getHeight(),
+      Application.getInstance().getSystemColor(Application.SYS_COLOR_WIN_BACKGROUND).getNativeFormat()
       );
     }
   
@@ -379,16 +735,16 @@ public class Window implements IWindow {
   
   /** Set the X co-ordinate for the window
    * 
-   * For a window this sets the parent to dirty so all child windows are
-   * redrawn.
+   * For a window only the old and new areas of the window are redrawn
+   * (see beginUpdate()).
    * 
    * @param nx the new X co-ordinate for this point.
    */
   public void setX(int nx) {
+    beginUpdate();
     m_rectangle.x = nx;
-    m_absolute = null;
-    if(getParent()!=null)
-      getParent().setDirty(true);
+    positionChanged();
+    endUpdate();
     }
   
   /** Get the Y co-ordinate for this point.
@@ -401,16 +757,16 @@ public class Window implements IWindow {
   
   /** Set the Y co-ordinate for this point.
    * 
-   * For a window this sets the parent to dirty so all child windows are
-   * redrawn.
+   * For a window only the old and new areas of the window are redrawn
+   * (see beginUpdate()).
    * 
    * @param ny the new Y co-ordinate for this point.
    */
   public void setY(int ny) {
+    beginUpdate();
     m_rectangle.y = ny;
-    m_absolute = null;
-    if(getParent()!=null)
-      getParent().setDirty(true);
+    positionChanged();
+    endUpdate();
     }
   
   /** Translate the point so the given point is the origin
@@ -420,7 +776,6 @@ public class Window implements IWindow {
    * @return IPoint the translated instance.
    */
   public IPoint translate(IPoint origin) {
-    m_absolute = null;
     return m_rectangle.translate(origin);
     }
   
@@ -434,16 +789,16 @@ public class Window implements IWindow {
   
   /** Set the width of the rectangle.
    * 
-   * For a window this sets the parent to dirty so all child windows are
-   * redrawn.
+   * For a window only the old and new areas of the window are redrawn
+   * (see beginUpdate()).
    * 
    * @param w the new width of the rectangle.
    */
   public void setWidth(int w) {
+    beginUpdate();
     m_rectangle.width = w;
-    m_absolute = null;
-    if(getParent()!=null)
-      getParent().setDirty(true);
+    positionChanged();
+    endUpdate();
     }
   
   /** Get the height of the rectangle.
@@ -456,16 +811,16 @@ public class Window implements IWindow {
   
   /** Set the height of the rectangle.
    * 
-   * For a window this sets the parent to dirty so all child windows are
-   * redrawn.
+   * For a window only the old and new areas of the window are redrawn
+   * (see beginUpdate()).
    * 
    * @param h the new height of the rectangle.
    */
   public void setHeight(int h) {
+    beginUpdate();
     m_rectangle.height = h;
-    m_absolute = null;
-    if(getParent()!=null)
-      getParent().setDirty(true);
+    positionChanged();
+    endUpdate();
     }
   
   /** Determine if this rectangle contains the given point
@@ -544,7 +899,7 @@ public class Window implements IWindow {
    * @param rect the Rectangle describing the clipping region.
    */
   public void setClip(IRectangle rect) {
-    // TODO: Should clip relative to this window.
+    Application.getInstance().setClip(rect);
     }
 
   /** Display a single pixel.
@@ -619,4 +974,88 @@ public class Window implements IWindow {
     Application.getInstance().drawString(font, point, color, string);
     }
 
+  /** Display a single pixel.
+   * 
+   * @param x the X co-ordinate of the pixel.
+   * @param y the Y co-ordinate of the pixel.
+   * @param color the native color to set the pixel to.
+   */
+  public void putPixel(int x, int y, int color) {
+    Application.getInstance().putPixel(x, y, color);
+    }
+
+  /** Fill a rectangle with a specific color.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to fill the rectangle with.
+   */
+  public void fillRect(int x, int y, int width, int height, int color) {
+    Application.getInstance().fillRect(x, y, width, height, color);
+    }
+  
+  /** Draw a line from one point to another 
+   * 
+   * @param x1 the X co-ordinate of the starting point.
+   * @param y1 the Y co-ordinate of the starting point.
+   * @param x2 the X co-ordinate of the ending point.
+   * @param y2 the Y co-ordinate of the ending point.
+   * @param color the native color to draw the line in.
+   */
+  public void drawLine(int x1, int y1, int x2, int y2, int color) {
+    Application.getInstance().drawLine(x1, y1, x2, y2, color);
+    }
+  
+  /** Draw a box around a rectangle.
+   * 
+   * @param x the X co-ordinate of the top left corner.
+   * @param y the Y co-ordinate of the top left corner.
+   * @param width the width of the rectangle.
+   * @param height the height of the rectangle.
+   * @param color the native color to draw the box in.
+   */
+  public void drawBox(int x, int y, int width, int height, int color) {
+    Application.getInstance().drawBox(x, y, width, height, color);
+    }
+
+  /** Draw an Image to the screen.
+   * 
+   * @param x the X co-ordinate of the top left corner of the image.
+   * @param y the Y co-ordinate of the top left corner of the image.
+   * @param image the Image to display.
+   * @param source the Rectangle describing the portion of the image to display (optional - may be null).
+   * @param mask the Icon to use as a mask (optional - may be null).
+   * @param color the color to use for icons (optional - default is black).
+   * @param palette the Palette to use to display the image (only required for 4bpp images).
+   */
+  public void drawImage(int x, int y, Image image, IRectangle source, Icon mask, Color color, Palette palette) {
+    Application.getInstance().drawImage(x, y, image, source, mask, color, palette);
+    }
+
+  /** Draw a single character using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the character at.
+   * @param y the Y co-ordinate to draw the character at.
+   * @param color the Color to draw the character with.
+   * @param ch the character to draw.
+   */
+  public void drawChar(Font font, int x, int y, Color color, char ch) {
+    Application.getInstance().drawChar(font, x, y, color, ch);
+    }
+
+  /** Draw a string using the given font.
+   * 
+   * @param font the Font to use to render the character.
+   * @param x the X co-ordinate to draw the string at.
+   * @param y the Y co-ordinate to draw the string at.
+   * @param color the Color to draw the character with.
+   * @param string the string to draw.
+   */
+  public void drawString(Font font, int x, int y, Color color, String string) {
+    Application.getInstance().drawString(font, x, y, color, string);
+    }
+
   }
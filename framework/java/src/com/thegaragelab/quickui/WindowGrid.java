@@ -0,0 +1,174 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui;
+
+//--- Imports
+import java.util.*;
+
+/** A uniform grid used to find the child windows of a container by location.
+ * 
+ * The area of the container is divided into square cells and each visible
+ * child window is listed in every cell it overlaps. Finding the windows at
+ * a point only needs the list for a single cell. The lists keep the windows
+ * in the same order as the container so the first match is the same window
+ * a linear search would find.
+ * 
+ * Positions are relative to the container so moving the container (or any
+ * of it's parents) does not change the grid. The container updates the grid
+ * when a child is added, removed, moved, resized or changes visibility.
+ */
+class WindowGrid {
+  //--- Constants
+  static final int CELL_SIZE = 32; //! Width and height of each cell (in pixels)
+
+  //--- Internal constants
+  private static final List<Window> EMPTY = Collections.emptyList();
+
+  //--- Instance variables
+  private int                m_width;   //! Width of the area covered by the grid
+  private int                m_height;  //! Height of the area covered by the grid
+  private int                m_columns; //! Number of columns in the grid
+  private int                m_rows;    //! Number of rows in the grid
+  private List<List<Window>> m_cells;   //! Windows overlapping each cell (in container order)
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Constructor
+   * 
+   * @param width the width of the container.
+   * @param height the height of the container.
+   */
+  WindowGrid(int width, int height) {
+    m_width = width;
+    m_height = height;
+    m_columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+    m_rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+    m_cells = new ArrayList<List<Window>>(m_columns * m_rows);
+    for(int index=0; index<(m_columns * m_rows); index++)
+      m_cells.add(new ArrayList<Window>());
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Convert a co-ordinate into a column or row number
+   * 
+   * @param value the co-ordinate to convert.
+   * @param limit the number of columns or rows.
+   * 
+   * @return the column or row containing the co-ordinate (clamped to the
+   *         grid).
+   */
+  private static int toCell(int value, int limit) {
+    return Math.max(0, Math.min(limit - 1, Math.floorDiv(value, CELL_SIZE)));
+    }
+
+  /** Determine if a window overlaps the grid at all
+   * 
+   * @param rect the area of the window.
+   * 
+   * @return true if some of the window is inside the grid.
+   */
+  private boolean overlaps(Rectangle rect) {
+    if((rect.width<=0)||(rect.height<=0))
+      return false;
+    if(((rect.x + rect.width)<=0)||((rect.y + rect.height)<=0))
+      return false;
+    return (rect.x<(m_columns * CELL_SIZE))&&(rect.y<(m_rows * CELL_SIZE));
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Determine if the grid matches the size of the container
+   * 
+   * @param width the width of the container.
+   * @param height the height of the container.
+   * 
+   * @return true if the grid was created for a container of this size.
+   */
+  boolean matches(int width, int height) {
+    return (m_width==width)&&(m_height==height);
+    }
+
+  /** Add a window to the grid
+   * 
+   * Windows that are not visible are not added.
+   * 
+   * @param window the window to add.
+   */
+  void add(Window window) {
+    if(!window.isVisible())
+      return;
+    if(window.m_indexed==null)
+      window.m_indexed = new Rectangle(0, 0, 0, 0);
+    Rectangle rect = window.m_indexed;
+    rect.x = window.getX();
+    rect.y = window.getY();
+    rect.width = window.getWidth();
+    rect.height = window.getHeight();
+    if(!overlaps(rect))
+      return;
+    int x2 = toCell(rect.x + rect.width - 1, m_columns);
+    int y2 = toCell(rect.y + rect.height - 1, m_rows);
+    for(int row=toCell(rect.y, m_rows); row<=y2; row++) {
+      for(int column=toCell(rect.x, m_columns); column<=x2; column++) {
+        // Keep the cell in container order
+        List<Window> cell = m_cells.get((row * m_columns) + column);
+        int index = cell.size();
+        while((index>0)&&(cell.get(index - 1).m_order>window.m_order))
+          index--;
+        cell.add(index, window);
+        }
+      }
+    }
+
+  /** Remove a window from the grid
+   * 
+   * @param window the window to remove.
+   */
+  void remove(Window window) {
+    Rectangle rect = window.m_indexed;
+    if((rect==null)||!overlaps(rect))
+      return;
+    int x2 = toCell(rect.x + rect.width - 1, m_columns);
+    int y2 = toCell(rect.y + rect.height - 1, m_rows);
+    for(int row=toCell(rect.y, m_rows); row<=y2; row++) {
+      for(int column=toCell(rect.x, m_columns); column<=x2; column++)
+        m_cells.get((row * m_columns) + column).remove(window);
+      }
+    // The rectangle is kept for the next time the window is added
+    rect.width = 0;
+    rect.height = 0;
+    }
+
+  /** Update the position of a window in the grid
+   * 
+   * @param window the window that has moved, been resized or changed
+   *               visibility.
+   */
+  void update(Window window) {
+    remove(window);
+    add(window);
+    }
+
+  /** Get the windows that may contain a point
+   * 
+   * @param x the X co-ordinate (relative to the container).
+   * @param y the Y co-ordinate (relative to the container).
+   * 
+   * @return the visible windows that overlap the cell containing the point
+   *         in container order. The list must not be modified.
+   */
+  List<Window> getCandidates(int x, int y) {
+    if((x<0)||(y<0)||(x>=(m_columns * CELL_SIZE))||(y>=(m_rows * CELL_SIZE)))
+      return EMPTY;
+    return m_cells.get(((y / CELL_SIZE) * m_columns) + (x / CELL_SIZE));
+    }
+
+  }
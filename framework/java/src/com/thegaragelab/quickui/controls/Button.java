@@ -42,9 +42,8 @@ public class Button extends SimpleControl implements IButton {
    */
   @Override
   public int getPreferredWidth() {
-    Dimension size = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingLeft() + size.getWidth() + padding.getPaddingRight();
+    return padding.getPaddingLeft() + Application.getInstance().getFont().getStringWidth(getText()) + padding.getPaddingRight();
     }
   
   /** Get the preferred height of this control
@@ -56,9 +55,8 @@ public class Button extends SimpleControl implements IButton {
    */
   @Override
   public int getPreferredHeight() {
-    Dimension size = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingTop() + size.getHeight() + padding.getPaddingBottom();
+    return padding.getPaddingTop() + Application.getInstance().getFont().getHeight() + padding.getPaddingBottom();
     }
   
   //-------------------------------------------------------------------------
@@ -73,11 +71,11 @@ public class Button extends SimpleControl implements IButton {
   public void onPaint() {
     super.onPaint();
     Font font = Application.getInstance().getFont();
-    Dimension size = font.getStringSize(getText());
+    Dimension size = getTextSize();
     // Draw the text on top
     drawString(
       font,
-      ControlHelper.getPosition(this, size, getPadding(), getHorizontalAlignment(), getVerticalAlignment()),
+      getPosition(size),
       getColor(),
       getText()
       );
@@ -49,9 +49,8 @@ public class Checkbox extends SimpleControl {
    */
   @Override
   public int getPreferredWidth() {
-    Dimension size = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingLeft() + ControlHelper.ICON_WIDTH + ControlHelper.ICON_PADDING + size.getWidth() + padding.getPaddingRight();
+    return padding.getPaddingLeft() + ControlHelper.ICON_WIDTH + ControlHelper.ICON_PADDING + Application.getInstance().getFont().getStringWidth(getText()) + padding.getPaddingRight();
     }
   
   /** Get the preferred height of this control
@@ -63,9 +62,8 @@ public class Checkbox extends SimpleControl {
    */
   @Override
   public int getPreferredHeight() {
-    Dimension size = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingTop() + Math.max(ControlHelper.ICON_HEIGHT, size.getHeight()) + padding.getPaddingRight();
+    return padding.getPaddingTop() + Math.max(ControlHelper.ICON_HEIGHT, Application.getInstance().getFont().getHeight()) + padding.getPaddingRight();
     }
   
   //-------------------------------------------------------------------------
@@ -81,10 +79,10 @@ public class Checkbox extends SimpleControl {
     super.onPaint();
     Font font = Application.getInstance().getFont();
     // Get the size of what we want to draw and where to draw it
-    Dimension size = font.getStringSize(getText());
+    Dimension size = getTextSize();
     size.width = size.width + ControlHelper.ICON_WIDTH + ControlHelper.ICON_PADDING;
     size.height = Math.max(size.height, ControlHelper.ICON_HEIGHT);
-    Point where = ControlHelper.getPosition(this, size, getPadding(), getHorizontalAlignment(), getVerticalAlignment());
+    Point where = getPosition(size);
     // Draw the icon
     ControlHelper.drawControlIcon(this, where, ControlHelper.ICON_CHECK_EMPTY, getColor());
     if(isChecked())
@@ -25,6 +25,7 @@ public abstract class ComplexControl extends Container implements IControl {
   private boolean m_touched;    //! Are we currently touched?
   private Color   m_background; //! The background color to use
   private Color   m_foreground; //! The foreground color to use
+  private ControlEvents m_events; //! Registered event handlers (created when needed)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -60,7 +61,19 @@ public abstract class ComplexControl extends Container implements IControl {
    * @param data the data associated with this event.
    */
   protected final void fireEvent(int event, Object data) {
-    ControlHelper.fireEvent(this, event, data);
+    ControlEvents events = m_events;
+    if(events!=null)
+      events.fire(this, event, data);
+    }
+
+  /** Get the event handlers for this control
+   * 
+   * @return the ControlEvents instance holding the handlers.
+   */
+  private synchronized ControlEvents getEvents() {
+    if(m_events==null)
+      m_events = new ControlEvents();
+    return m_events;
     }
   
   //-------------------------------------------------------------------------
@@ -138,13 +151,25 @@ public abstract class ComplexControl extends Container implements IControl {
       }
     }
   
-  /** Add a listener for an event
-   * 
-   * @param event the event ID to listen for.
-   * @param handler the handler to evoke when the event occurs.
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#setEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
    */
   public final void setEventHandler(int event, IControlEventHandler handler) {
-    ControlHelper.setEventHandler(this, event, handler);
+    getEvents().set(event, handler);
+    }
+  
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#addEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
+   */
+  public final void addEventHandler(int event, IControlEventHandler handler) {
+    getEvents().add(event, handler);
+    }
+  
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#removeEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
+   */
+  public final boolean removeEventHandler(int event, IControlEventHandler handler) {
+    return getEvents().remove(event, handler);
     }
   
   /**
@@ -197,12 +222,29 @@ public abstract class ComplexControl extends Container implements IControl {
   // Public event methods
   //-------------------------------------------------------------------------
 
+  /** Called when the control is removed from it's parent
+   * 
+   * All event handlers are removed so they (and anything they refer to)
+   * are not kept alive by a reference to the closed control. Classes that
+   * override this method should call the parent implementation.
+   */
+  @Override
+  public void onClose() {
+    super.onClose();
+    ControlEvents events = m_events;
+    if(events!=null)
+      events.clear();
+    }
+
   /** Called to erase the background of the control.
    */
   public void onEraseBackground() {
     fillRect(
-      new Rectangle(Point.ORIGIN, this), 
-      getBackground()
+      0,
+      0,
+      getWidth(),
+      getHeight(),
+      getBackground().getNativeFormat()
       );
     }
   
@@ -0,0 +1,147 @@
+/*---------------------------------------------------------------------------*
+* $Id$
+*---------------------------------------------------------------------------*/
+package com.thegaragelab.quickui.controls;
+
+//--- Imports
+import com.thegaragelab.quickui.*;
+
+/** The event handlers registered with a single control
+ * 
+ * Handlers are kept in an array for each event ID. Changing the handlers
+ * replaces the arrays rather than modifying them so firing an event needs
+ * no locking and does not create any objects, even if the handlers are
+ * changed while the event is being dispatched.
+ */
+class ControlEvents {
+  //--- Instance variables
+  private volatile IControlEventHandler[][] m_handlers; //! Handlers for each event ID (null if none)
+
+  //-------------------------------------------------------------------------
+  // Construction and initialisation
+  //-------------------------------------------------------------------------
+
+  /** Default constructor
+   */
+  ControlEvents() {
+    m_handlers = new IControlEventHandler[0][];
+    }
+
+  //-------------------------------------------------------------------------
+  // Helper methods
+  //-------------------------------------------------------------------------
+
+  /** Replace the handlers for a single event
+   * 
+   * @param event the event ID (must not be negative).
+   * @param handlers the new handlers for the event (null or empty if none).
+   */
+  private void replace(int event, IControlEventHandler[] handlers) {
+    if((handlers!=null)&&(handlers.length==0))
+      handlers = null;
+    IControlEventHandler[][] current = m_handlers;
+    if((event>=current.length)&&(handlers==null))
+      return;
+    IControlEventHandler[][] updated = new IControlEventHandler[Math.max(current.length, event + 1)][];
+    System.arraycopy(current, 0, updated, 0, current.length);
+    updated[event] = handlers;
+    m_handlers = updated;
+    }
+
+  /** Get the handlers for a single event
+   * 
+   * @param event the event ID.
+   * 
+   * @return the array of handlers for the event or null if there are none.
+   */
+  private IControlEventHandler[] get(int event) {
+    IControlEventHandler[][] handlers = m_handlers;
+    if((event<0)||(event>=handlers.length))
+      return null;
+    return handlers[event];
+    }
+
+  //-------------------------------------------------------------------------
+  // Public methods
+  //-------------------------------------------------------------------------
+
+  /** Send an event to all registered handlers
+   * 
+   * Handlers are called in the order they were added.
+   * 
+   * @param source the control sending the event.
+   * @param event the event ID being sent.
+   * @param data parameters for the event.
+   */
+  void fire(IWindow source, int event, Object data) {
+    IControlEventHandler[] handlers = get(event);
+    if(handlers==null)
+      return;
+    for(int index=0; index<handlers.length; index++)
+      handlers[index].onEvent(source, event, data);
+    }
+
+  /** Set the only handler for an event
+   * 
+   * @param event the event ID.
+   * @param handler the handler to use or null to remove all handlers.
+   */
+  synchronized void set(int event, IControlEventHandler handler) {
+    if(event<0)
+      return;
+    if(handler==null)
+      replace(event, null);
+    else
+      replace(event, new IControlEventHandler[] { handler });
+    }
+
+  /** Add a handler for an event
+   * 
+   * @param event the event ID.
+   * @param handler the handler to add.
+   */
+  synchronized void add(int event, IControlEventHandler handler) {
+    if((event<0)||(handler==null))
+      return;
+    IControlEventHandler[] current = get(event);
+    if(current==null) {
+      replace(event, new IControlEventHandler[] { handler });
+      return;
+      }
+    IControlEventHandler[] updated = new IControlEventHandler[current.length + 1];
+    System.arraycopy(current, 0, updated, 0, current.length);
+    updated[current.length] = handler;
+    replace(event, updated);
+    }
+
+  /** Remove a handler for an event
+   * 
+   * @param event the event ID.
+   * @param handler the handler to remove.
+   * 
+   * @return true if the handler was removed, false if it was not
+   *         registered for the event.
+   */
+  synchronized boolean remove(int event, IControlEventHandler handler) {
+    IControlEventHandler[] current = get(event);
+    if(current==null)
+      return false;
+    for(int index=0; index<current.length; index++) {
+      if(current[index]==handler) {
+        IControlEventHandler[] updated = new IControlEventHandler[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        replace(event, updated);
+        return true;
+        }
+      }
+    return false;
+    }
+
+  /** Remove all handlers for all events
+   */
+  synchronized void clear() {
+    m_handlers = new IControlEventHandler[0][];
+    }
+
+  }
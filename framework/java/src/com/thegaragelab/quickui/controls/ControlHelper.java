@@ -8,14 +8,13 @@
 package com.thegaragelab.quickui.controls;
 
 //--- Imports
-import java.util.*;
 import com.thegaragelab.quickui.*;
 
-/** Control event dispatcher
+/** Control helper methods
  * 
- * This class provides static methods for allow listening to events from a
- * control and dispatching events to any registered listeners. It is a private
- * class that is not accessible outside the package.
+ * This class provides static methods for drawing and positioning the
+ * elements of a control. It is a private class that is not accessible
+ * outside the package.
  * 
  * TODO: The icons should really be part of the system font and have the same
  *       size.
@@ -37,52 +36,16 @@ class ControlHelper {
   public static final int ICON_CHECK_SELECTED = 1;
   public static final int ICON_RADIO_EMPTY    = 2;
   public static final int ICON_RADIO_SELECTED = 3;
+  private static final int ICON_MAX           = ICON_RADIO_SELECTED;
   
   //--- Static instance variables
-  private static Icon m_icons; //! Icons for common controls
-  private static HashMap<ControlEventSource, IControlEventHandler> m_dispatcher;
+  private static Icon        m_icons; //! Icons for common controls
+  private static Rectangle[] m_areas; //! Location of each icon within m_icons
   
   //-------------------------------------------------------------------------
   // Helper methods
   //-------------------------------------------------------------------------
 
-  /** Dispatch a message from a control to any registered listeners.
-   * 
-   * @param control the control sending the event.
-   * @param event the event ID being sent.
-   * @param params parameters for the event.
-   */
-  public static synchronized void fireEvent(IControl control, int event, Object params) {
-    // Do we have any handlers registered ?
-    if(m_dispatcher==null)
-      return;
-    // Do we have one for this source and event ?
-    ControlEventSource source = new ControlEventSource(control, event);
-    if(!m_dispatcher.containsKey(source))
-      return;
-    IControlEventHandler handler = m_dispatcher.get(source);
-    if(handler!=null)
-      handler.onEvent(control, event, params);
-    }
-  
-  /** Set the listener for an event.
-   * 
-   * @param control the control generating the event.
-   * @param event the event ID to listen to.
-   * @param handler the handler to process the event.
-   */
-  public static synchronized void setEventHandler(IControl control, int event, IControlEventHandler handler) {
-    // Make sure we have something to hold the mapping
-    if(m_dispatcher==null)
-      m_dispatcher = new HashMap<ControlEventSource, IControlEventHandler>();
-    // Add or remove it as needed
-    ControlEventSource source = new ControlEventSource(control, event);
-    if(handler==null)
-      m_dispatcher.remove(source);
-    else
-      m_dispatcher.put(source, handler);
-    }
-  
   /** Draw a control icon at the requested co-ordinates
    * 
    * @param surface the surface to draw on.
@@ -95,21 +58,19 @@ class ControlHelper {
     synchronized(ControlHelper.class) {
       if(m_icons==null) {
         m_icons = Asset.loadIcon(COMMON_CONTROLS);
+        // TODO: This is not very generic, it assume all icons are on the same line.
+        m_areas = new Rectangle[ICON_MAX + 1];
+        for(int index=0; index<=ICON_MAX; index++)
+          m_areas[index] = new Rectangle(index * ICON_WIDTH, 0, ICON_WIDTH, ICON_HEIGHT);
         }
-      if(m_icons==null)
+      if((m_icons==null)||(icon<0)||(icon>ICON_MAX))
         return;
       }
     // Draw the requested icon
-    // TODO: This is not very generic, it assume all icons are on the same line.
     surface.drawImage(
       where,
       m_icons,
-      new Rectangle(
-        icon * ICON_WIDTH,
-        0,
-        ICON_WIDTH,
-        ICON_HEIGHT
-        ),
+      m_areas[icon],
       null,
       color,
       null
@@ -127,7 +88,26 @@ class ControlHelper {
    * @return a point indicating where to position the object.
    */
   public static final Point getPosition(IDimension container, IDimension content, Padding padding, int halign, int valign) {
-    Point p = new Point(0, 0);
+    return getPosition(container, content, padding, halign, valign, new Point(0, 0));
+    }
+  
+  /** Determine where to position an element given padding and alignment.
+   * 
+   * This version stores the result in an existing Point instance rather
+   * than creating a new one.
+   * 
+   * @param container the rectangle describing the container.
+   * @param content the dimension of the content to place.
+   * @param padding the padding to apply to the positioning.
+   * @param halign the horizontal alignment for positioning.
+   * @param valign the vertical alignment for positioning.
+   * @param p the Point to store the result in.
+   * 
+   * @return the Point passed in to the method.
+   */
+  public static final Point getPosition(IDimension container, IDimension content, Padding padding, int halign, int valign, Point p) {
+    p.x = 0;
+    p.y = 0;
     // Calculate the horizontal position
     switch(halign) {
       case IControl.ALIGN_LEFT:
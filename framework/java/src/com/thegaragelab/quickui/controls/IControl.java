@@ -96,14 +96,34 @@ public interface IControl extends IWindow {
   
   /** Set the listener for a control event
    * 
-   * Only a single listener may be set for any event, if you set a new event
-   * handler the previous ones will no longer be called.
+   * This replaces any listeners already registered for the event, the
+   * previous ones will no longer be called.
    * 
    * @param event the event ID to listen for.
-   * @param handler the handler to evoke when the event occurs.
+   * @param handler the handler to evoke when the event occurs (null to
+   *                remove all listeners for the event).
    */
   public void setEventHandler(int event, IControlEventHandler handler);
   
+  /** Add a listener for a control event
+   * 
+   * Listeners are called in the order they were added.
+   * 
+   * @param event the event ID to listen for.
+   * @param handler the handler to evoke when the event occurs.
+   */
+  public void addEventHandler(int event, IControlEventHandler handler);
+  
+  /** Remove a listener for a control event
+   * 
+   * @param event the event ID the listener was added for.
+   * @param handler the handler to remove.
+   * 
+   * @return true if the listener was removed, false if it was not
+   *         registered for the event.
+   */
+  public boolean removeEventHandler(int event, IControlEventHandler handler);
+  
   /** Determine if the button is currently touched.
    * 
    * @return true if the button is in a depressed state.
@@ -43,9 +43,8 @@ public class Label extends SimpleControl {
    */
   @Override
   public int getPreferredWidth() {
-    Dimension text = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingLeft() + text.getWidth() + padding.getPaddingRight();
+    return padding.getPaddingLeft() + Application.getInstance().getFont().getStringWidth(getText()) + padding.getPaddingRight();
     }
   
   /** Get the preferred height of this control
@@ -57,9 +56,8 @@ public class Label extends SimpleControl {
    */
   @Override
   public int getPreferredHeight() {
-    Dimension text = Application.getInstance().getFont().getStringSize(getText());
     Padding padding = getPadding();
-    return padding.getPaddingTop() + text.getHeight() + padding.getPaddingBottom();
+    return padding.getPaddingTop() + Application.getInstance().getFont().getHeight() + padding.getPaddingBottom();
     }
   
   //-------------------------------------------------------------------------
@@ -70,7 +68,7 @@ public class Label extends SimpleControl {
    */
   @Override
   public void onEraseBackground() {
-    fillRect(new Rectangle(Point.ORIGIN, this), getBackground());
+    fillRect(0, 0, getWidth(), getHeight(), getBackground().getNativeFormat());
     }
 
   /** Called when the window needs to be painted
@@ -82,8 +80,8 @@ public class Label extends SimpleControl {
     super.onPaint();
     // Get the size information
     Font font = Application.getInstance().getFont();
-    Dimension size = font.getStringSize(getText());
-    Point where = ControlHelper.getPosition(this, size, getPadding(), getHorizontalAlignment(), getVerticalAlignment());
+    Dimension size = getTextSize();
+    Point where = getPosition(size);
     // Draw the text
     this.drawString(
       font,
@@ -18,13 +18,16 @@ import com.thegaragelab.quickui.*;
  */
 public abstract class SimpleControl extends Window implements IControl {
   //--- Instance variables
-  private String  m_text;       //! Text for this control
-  private Padding m_padding;    //! Padding for this control
-  private int     m_valign;     //! Vertical alignment for the control
-  private int     m_halign;     //! Horizontal alignment for the control
-  private boolean m_touched;    //! Are we currently touched?
-  private Color   m_background; //! The background color to use
-  private Color   m_foreground; //! The foreground color to use
+  private String    m_text;       //! Text for this control
+  private Padding   m_padding;    //! Padding for this control
+  private int       m_valign;     //! Vertical alignment for the control
+  private int       m_halign;     //! Horizontal alignment for the control
+  private boolean   m_touched;    //! Are we currently touched?
+  private Color     m_background; //! The background color to use
+  private Color     m_foreground; //! The foreground color to use
+  private Dimension m_textSize;   //! Size of the text (updated by getTextSize())
+  private Point     m_position;   //! Position of the content (updated by getPosition())
+  private ControlEvents m_events; //! Registered event handlers (created when needed)
   
   //-------------------------------------------------------------------------
   // Construction and initialisation
@@ -54,7 +57,49 @@ public abstract class SimpleControl extends Window implements IControl {
    * @param data the data associated with this event.
    */
   protected final void fireEvent(int event, Object data) {
-    ControlHelper.fireEvent(this, event, data);
+    ControlEvents events = m_events;
+    if(events!=null)
+      events.fire(this, event, data);
+    }
+
+  /** Get the event handlers for this control
+   * 
+   * @return the ControlEvents instance holding the handlers.
+   */
+  private synchronized ControlEvents getEvents() {
+    if(m_events==null)
+      m_events = new ControlEvents();
+    return m_events;
+    }
+  
+  /** Get the size of the text for this control
+   * 
+   * The same Dimension instance is returned by each call (the values are
+   * updated each time) so controls can measure their text during layout
+   * and painting without allocating memory.
+   * 
+   * @return the size of the text in the application font.
+   */
+  protected final Dimension getTextSize() {
+    if(m_textSize==null)
+      m_textSize = new Dimension(0, 0);
+    Application.getInstance().getFont().getStringSize(getText(), m_textSize);
+    return m_textSize;
+    }
+  
+  /** Determine where to draw the content of this control
+   * 
+   * Applies the padding and alignment for the control. As with getTextSize()
+   * the same Point instance is returned by each call.
+   * 
+   * @param content the size of the content to position.
+   * 
+   * @return the location of the top left corner of the content.
+   */
+  protected final Point getPosition(IDimension content) {
+    if(m_position==null)
+      m_position = new Point(0, 0);
+    return ControlHelper.getPosition(this, content, getPadding(), getHorizontalAlignment(), getVerticalAlignment(), m_position);
     }
   
   //-------------------------------------------------------------------------
@@ -134,13 +179,25 @@ public abstract class SimpleControl extends Window implements IControl {
       }
     }
   
-  /** Add a listener for an event
-   * 
-   * @param event the event ID to listen to.
-   * @param handler the handler to process the event.
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#setEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
    */
   public final void setEventHandler(int event, IControlEventHandler handler) {
-    ControlHelper.setEventHandler(this, event, handler);
+    getEvents().set(event, handler);
+    }
+  
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#addEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
+   */
+  public final void addEventHandler(int event, IControlEventHandler handler) {
+    getEvents().add(event, handler);
+    }
+  
+  /**
+   * @see com.thegaragelab.quickui.controls.IControl#removeEventHandler(int, com.thegaragelab.quickui.controls.IControlEventHandler)
+   */
+  public final boolean removeEventHandler(int event, IControlEventHandler handler) {
+    return getEvents().remove(event, handler);
     }
   
   /**
@@ -192,6 +249,20 @@ public abstract class SimpleControl extends Window implements IControl {
   // Implementation of IWindow
   //-------------------------------------------------------------------------
 
+  /** Called when the control is removed from it's parent
+   * 
+   * All event handlers are removed so they (and anything they refer to)
+   * are not kept alive by a reference to the closed control. Classes that
+   * override this method should call the parent implementation.
+   */
+  @Override
+  public void onClose() {
+    super.onClose();
+    ControlEvents events = m_events;
+    if(events!=null)
+      events.clear();
+    }
+
   /** Called to erase the background of the control.
    */
   @Override
@@ -203,7 +274,7 @@ public abstract class SimpleControl extends Window implements IControl {
     else
       color = getBackground();
     // Now erase the background
-    fillRect(new Rectangle(Point.ORIGIN, this), color);
+    fillRect(0, 0, getWidth(), getHeight(), color.getNativeFormat());
     }
 
   /**
@@ -16,18 +16,24 @@ import com.thegaragelab.quickui.controls.*;
  * This shows a modal dialog with an animated 'busy' signal and some text. The
  * dialog is generally used to indicate some background process is in operation.
  * 
+ * The background process is usually given as a Dialog.Activity, it is started
+ * when the dialog is shown and the dialog hides itself as soon as the activity
+ * finishes. Child classes may instead override startActivity() and
+ * isComplete(), completion is then checked each time the animation moves on.
+ * 
  * There is no user interaction.
  */
 public class DialogBusy extends Dialog implements SimpleTimer.Listener {
   //--- Constants
-  private static final long   TEST_INTERVAL   = 250;
+  private static final long   FRAME_INTERVAL  = 250;
   private static final String ANIMATION_ASSET = "loader";
   private static final int    IMAGE_SIZE      = 24;
   private static final int    IMAGE_WIDTH     = 4;
   private static final int    IMAGE_FRAMES    = 12;
 
   //--- Instance variables
-  private SimpleTimer m_timer;    //! The timer used to control testing
+  private SimpleTimer m_timer;    //! The timer used to animate the icon
+  private Activity    m_activity; //! The background activity (may be null)
   private Image       m_image;    //! The image to animate
   private Palette     m_palette;  //! The palette to use for colors
   private int         m_frame;    //! The current frame of the icon
@@ -41,7 +47,17 @@ public class DialogBusy extends Dialog implements SimpleTimer.Listener {
    *
    */
   public DialogBusy(String text) {
+    this(text, null);
+    }
+
+  /** Constructor with a background activity
+   * 
+   * @param text the text to display.
+   * @param activity the activity to run while the dialog is visible.
+   */
+  public DialogBusy(String text, Activity activity) {
     super();
+    m_activity = activity;
     // Now add the text
     if(m_image!=null)
       new Label(this, new Rectangle(m_image.getHeight() + 4, 2, getWidth() - m_image.getHeight() - 4, getHeight() - 4), text);
@@ -99,8 +115,10 @@ public class DialogBusy extends Dialog implements SimpleTimer.Listener {
     this.drawImage(
       m_iconRect,
       m_image,
-      m_palette,
-      slice
+      slice,
+      null,
+      Application.getInstance().getSystemColor(Application.SYS_COLOR_DLG_FOREGROUND),
+      m_palette
       );
     }
 
@@ -114,10 +132,13 @@ public class DialogBusy extends Dialog implements SimpleTimer.Listener {
     // Handle timers and task management
     if(visible) {
       startActivity();
-      m_timer = SimpleTimer.repeat(TEST_INTERVAL, this);
+      if(m_activity!=null)
+        start(m_activity);
+      m_timer = SimpleTimer.repeat(FRAME_INTERVAL, this);
       }
-    else {
+    else if(m_timer!=null) {
       m_timer.stop();
+      m_timer = null;
       }
     }
 
@@ -130,7 +151,7 @@ public class DialogBusy extends Dialog implements SimpleTimer.Listener {
       setVisible(false);
     else {
       m_frame++;
-      setDirty(true);
+      invalidate(m_iconRect);
       }
     }
 
@@ -142,7 +163,9 @@ public class DialogBusy extends Dialog implements SimpleTimer.Listener {
    * 
    * Child classes can override this to start a background process. If they do
    * they should also implement the 'isComplete()' method to indicate that the
-   * process is complete and the dialog can dissappear.
+   * process is complete and the dialog can dissappear. Passing an Activity to
+   * the constructor is preferred, the dialog then closes as soon as it is
+   * finished.
    */
   protected void startActivity() {
     // Nothing to do in this implementation